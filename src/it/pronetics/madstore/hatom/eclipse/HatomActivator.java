@@ -16,14 +16,22 @@
 
 package it.pronetics.madstore.hatom.eclipse;
 
+import it.pronetics.madstore.hatom.eclipse.validator.HentryAnalyzer;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationMetrics;
+
+import javax.management.JMException;
+
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 /**
  * The activator class controls the plug-in life cycle.<br>
+ * While the plug-in is active, the validation metrics are registered in the platform MBean server.
+ * When it's stopped, the threads of the parallel hentry validation are released.<br>
  * @author Andrea Castello
- * @version 1.1
+ * @version 1.3
  */
 public class HatomActivator extends AbstractUIPlugin {
 
@@ -46,6 +54,12 @@ public class HatomActivator extends AbstractUIPlugin {
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
+
+        try {
+            ValidationMetrics.register();
+        } catch (JMException e) {
+            getLog().log(new Status(Status.WARNING, PLUGIN_ID, "Validation metrics cannot be registered", e));
+        }
     }
 
     /**
@@ -54,6 +68,15 @@ public class HatomActivator extends AbstractUIPlugin {
      * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
      */
     public void stop(BundleContext context) throws Exception {
+
+        try {
+            ValidationMetrics.unregister();
+        } catch (JMException e) {
+            getLog().log(new Status(Status.WARNING, PLUGIN_ID, "Validation metrics cannot be unregistered", e));
+        }
+
+        HentryAnalyzer.shutdown();
+
         plugin = null;
         super.stop(context);
     }
@@ -17,28 +17,37 @@
 package it.pronetics.madstore.hatom.eclipse;
 
 import it.pronetics.madstore.hatom.eclipse.editor.ColorManager;
+import it.pronetics.madstore.hatom.eclipse.editor.DocumentCharSequence;
+import it.pronetics.madstore.hatom.eclipse.editor.DocumentReader;
 import it.pronetics.madstore.hatom.eclipse.editor.HatomEditorView;
+import it.pronetics.madstore.hatom.eclipse.editor.MarkerPublisher;
 import it.pronetics.madstore.hatom.eclipse.editor.syntax.IXMLColorConstants;
 import it.pronetics.madstore.hatom.eclipse.editor.syntax.XMLConfiguration;
 import it.pronetics.madstore.hatom.eclipse.editor.syntax.XMLDocumentProvider;
 import it.pronetics.madstore.hatom.eclipse.prefs.PreferencesPage;
-import it.pronetics.madstore.hatom.eclipse.validator.TimeMeasurer;
+import it.pronetics.madstore.hatom.eclipse.validator.IncrementalValidator;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationTimings;
 import it.pronetics.madstore.hatom.eclipse.validator.ValidatorCache;
 import it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine;
 
 import java.util.ResourceBundle;
 
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.ui.IEditorActionDelegate;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IPathEditorInput;
+import org.eclipse.ui.IURIEditorInput;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PlatformUI;
@@ -50,7 +59,7 @@ import org.eclipse.ui.texteditor.ITextEditorActionDefinitionIds;
 /**
  * Editor handler for files that have HTML/XHTML extension.<br>
  * @author Andrea Castello
- * @version 1.7
+ * @version 1.14
  */
 public class HatomEditor extends TextEditor implements IEditorActionDelegate {
 
@@ -58,13 +67,32 @@ public class HatomEditor extends TextEditor implements IEditorActionDelegate {
     // Editor document handler
     private IEditorPart editorPart;
 
+    // Validator of this editor's document: it is kept between validations, so that only the edited hentries
+    // are validated again. It is shared by the validation action and the background validation
+    private IncrementalValidator incrementalValidator;
+
+    // Document whose changes are notified to the incremental validator
+    private IDocument validatedDocument;
+
+    // Notifies every change of the document to the incremental validator
+    private IDocumentListener documentListener = new IDocumentListener() {
+
+        public void documentAboutToBeChanged(DocumentEvent event) {
+        }
+
+        public void documentChanged(DocumentEvent event) {
+            String text = event.getText();
+            incrementalValidator.documentChanged(event.getOffset(), event.getLength(), (text != null) ? text.length() : 0);
+        }
+    };
+
     /**
      * Creates a new instance of HatomEditor.<br>
      */
     public HatomEditor() {
         super();
         colorManager = getColorManager();
-        setSourceViewerConfiguration(new XMLConfiguration(colorManager));
+        setSourceViewerConfiguration(new XMLConfiguration(colorManager, this));
         // Since we handle an XHTML content, we assume it is at least a well-formed XML,
         // so we create an XML document provider.<br>
         setDocumentProvider(new XMLDocumentProvider());
@@ -141,10 +169,44 @@ public class HatomEditor extends TextEditor implements IEditorActionDelegate {
      * Performs operation that have to be done before this editor disposal (ie: release resources)
      */
     public void dispose() {
+        if (getEditorInput() != null) {
+            ValidatorCache.getInstance().remove(getDocumentName(getEditorInput()));
+        }
+        releaseValidatedDocument();
         colorManager.dispose();
         super.dispose();
     }
 
+    /**
+     * Returns the incremental validator of the given document, which must be this editor's document.<br>
+     * If the editor document has changed since the last validation, a new validator is created.<br>
+     * @param document the editor's document
+     * @return the incremental validator
+     */
+    public synchronized IncrementalValidator getIncrementalValidator(IDocument document) {
+
+        if (document != validatedDocument) {
+            releaseValidatedDocument();
+            incrementalValidator = new IncrementalValidator();
+            validatedDocument = document;
+            validatedDocument.addDocumentListener(documentListener);
+        }
+
+        return incrementalValidator;
+    }
+
+    /**
+     * Stops listening to the changes of the validated document.<br>
+     */
+    private synchronized void releaseValidatedDocument() {
+
+        if (validatedDocument != null) {
+            validatedDocument.removeDocumentListener(documentListener);
+            validatedDocument = null;
+            incrementalValidator = null;
+        }
+    }
+
     /**
      * Sets the active editor.<br>
      * @param targetEditor - The target editor
@@ -176,30 +238,51 @@ public class HatomEditor extends TextEditor implements IEditorActionDelegate {
     public void run(IAction action) {
         // Retrieve the editor input
         IEditorInput editorInput = this.editorPart.getEditorInput();
-        // We create the engine associated to the file name retrieved by editor input.
-        ValidatorEngine engine = ValidatorCache.getInstance().createEngine(editorInput.getName());
-
-        IDocumentProvider documentProvider = this.getDocumentProvider();
+        // We create the engine associated to the file path retrieved by editor input.
+        String documentName = getDocumentName(editorInput);
+        ValidatorEngine engine = ValidatorCache.getInstance().createEngine(documentName);
 
         try {
-            // Connects the document provider (here XMLDocumentProvider) to the up to date input.
-            documentProvider.connect(editorInput);
+            engine.setDocumentName(documentName);
+
+            // The time of each validation phase is shown in the view
+            ValidationTimings timings = new ValidationTimings();
+            engine.setTimings(timings);
+
+            if (editorPart instanceof HatomEditor) {
 
-            // Retrieves the document data (name, content, etc.)
-            IDocument document = documentProvider.getDocument(editorInput);
-            engine.setDocumentName(editorInput.getName());
+                // Validates the document being edited: only the hentries changed since the last validation
+                // are validated again
+                HatomEditor editor = (HatomEditor) editorPart;
+                IDocument document = editor.getDocumentProvider().getDocument(editorInput);
+                editor.getIncrementalValidator(document).validate(engine, new DocumentCharSequence(document));
 
-            TimeMeasurer measurer = new TimeMeasurer();
+            } else {
+
+                IDocumentProvider documentProvider = this.getDocumentProvider();
+
+                // Connects the document provider (here XMLDocumentProvider) to the up to date input.
+                documentProvider.connect(editorInput);
 
-            // Performs document validation
-            engine.validate(document.get());
+                // Retrieves the document data (name, content, etc.)
+                IDocument document = documentProvider.getDocument(editorInput);
+
+                // Performs document validation, reading the document content without copying it
+                engine.validate(new DocumentReader(document));
+            }
 
             // Static access to workbench UI components
             IWorkbench workbench = PlatformUI.getWorkbench();
             IWorkbenchPage page = workbench.getActiveWorkbenchWindow().getActivePage();
             // We retrieve the view associated to this editor (see file plugin.xml)
             HatomEditorView hatomView = (HatomEditorView) page.showView(HatomEditorView.ID);
-            hatomView.printReports(engine.getReports(), measurer);
+            hatomView.printReports(engine.getReports(), timings);
+
+            // Reports are also published as problem markers, when the document is a workspace resource
+            IResource resource = editorInput.getAdapter(IResource.class);
+            if (resource != null) {
+                MarkerPublisher.publish(resource, engine.getReports());
+            }
 
         } catch (Exception ex) { // Can be Core or NullPointerException
 
@@ -208,6 +291,23 @@ public class HatomEditor extends TextEditor implements IEditorActionDelegate {
         }
     }
 
+    /**
+     * Returns the name of the document of the given editor input, used as its key in the validator cache:
+     * the full path of the document when it's available, otherwise its name.<br>
+     * @param editorInput the editor input
+     * @return the document name
+     */
+    private static String getDocumentName(IEditorInput editorInput) {
+
+        if (editorInput instanceof IPathEditorInput) {
+            return ((IPathEditorInput) editorInput).getPath().toString();
+        } else if (editorInput instanceof IURIEditorInput && ((IURIEditorInput) editorInput).getURI() != null) {
+            return ((IURIEditorInput) editorInput).getURI().toString();
+        }
+
+        return editorInput.getName();
+    }
+
     /**
      * Not yet implemented.<br>
      */
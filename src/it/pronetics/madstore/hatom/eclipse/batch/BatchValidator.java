@@ -0,0 +1,524 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.batch;
+
+import it.pronetics.madstore.hatom.eclipse.validator.Report;
+import it.pronetics.madstore.hatom.eclipse.validator.ResultCache;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationMetrics;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationTimings;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+
+/**
+ * Command line validator, that validates hAtom documents outside the IDE (ie: on build agents).<br>
+ * Arguments are files, directories (whose <code>.xhtml</code> and <code>.html</code> files are validated,
+ * recursively) and glob patterns, where <code>*</code> and <code>?</code> match inside a directory and
+ * <code>**</code> matches any number of directories. Files are validated concurrently, and their reports are
+ * printed in the order of the arguments, followed by the throughput of the run.<br>
+ * <br>
+ * Options:<br>
+ * <li><code>-threads n</code>: number of validating threads, the number of processors by default
+ * <li><code>-encoding name</code>: encoding of the documents, so that reports have line and column; by
+ * default it is detected by the parser, and reports only have the element path
+ * <li><code>-cache dir</code>: directory of the validation result cache (see <code>ResultCache</code>)
+ * <li><code>-max-reports n</code>: maximum number of reports of each document
+ * <li><code>-fail-fast</code>: stops each document at its first report
+ * <li><code>-merge-duplicates</code>: reports identical errors once, with their occurrence count
+ * <li><code>-timings</code>: prints the time spent in each validation phase by all the threads
+ * <li><code>-metrics</code>: prints the validation latency percentiles and the cache hit rate<br>
+ * <br>
+ * While the documents are validated, the validation metrics are registered in the platform MBean server
+ * (see <code>ValidationMetrics</code>), so that a long run can be monitored through JMX.<br>
+ * <br>
+ * The exit status is 0 if all the documents are valid, 1 if any of them has errors or cannot be parsed, 2
+ * if the arguments are not valid or a file cannot be read.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.2
+ */
+public class BatchValidator {
+
+    // Exit statuses
+    public static final int EXIT_VALID = 0;
+    public static final int EXIT_INVALID = 1;
+    public static final int EXIT_FAILURE = 2;
+
+    // Extensions of the files validated when a directory is given
+    private static final String[] EXTENSIONS = { "xhtml", "html" };
+
+    // Characters that make an argument a glob pattern
+    private static final String GLOB_CHARACTERS = "*?";
+
+    // Number of validating threads
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    // Encoding of the documents, null if it must be detected by the parser
+    private String encoding;
+
+    // Cache of the validation results, can be null
+    private ResultCache resultCache;
+
+    // Engine options
+    private int maximumReports;
+    private boolean failFast;
+    private boolean mergeDuplicates;
+
+    // Time spent in each validation phase by all the documents, null if it's not recorded
+    private ValidationTimings timings;
+
+    // Whether the validation metrics are printed
+    private boolean printMetrics;
+
+    // Where reports and statistics are printed
+    private PrintStream out = System.out;
+
+    /**
+     * Validates the documents given by the arguments, and exits with the validation status.<br>
+     * @param args options, files, directories and glob patterns
+     */
+    public static void main(String[] args) {
+        System.exit(new BatchValidator().run(args));
+    }
+
+    /**
+     * Validates the documents given by the arguments.<br>
+     * @param args options, files, directories and glob patterns
+     * @return the exit status
+     */
+    public int run(String[] args) {
+
+        List<File> files = new ArrayList<File>();
+
+        try {
+            parseArguments(args, files);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            return EXIT_FAILURE;
+        }
+
+        try {
+            ValidationMetrics.register();
+        } catch (JMException e) {
+            System.err.println("Validation metrics cannot be registered: " + e.getMessage());
+        }
+
+        try {
+            return validate(files);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return EXIT_FAILURE;
+        }
+    }
+
+    /**
+     * Reads the options and collects the files to be validated.<br>
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    private void parseArguments(String[] args, List<File> files) {
+
+        List<String> paths = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+
+            String arg = args[i];
+
+            if (arg.equals("-threads")) {
+                threadCount = parseCount(arg, getValue(args, ++i));
+            } else if (arg.equals("-encoding")) {
+                encoding = getValue(args, ++i);
+            } else if (arg.equals("-cache")) {
+                resultCache = new ResultCache(new File(getValue(args, ++i)));
+            } else if (arg.equals("-max-reports")) {
+                maximumReports = parseCount(arg, getValue(args, ++i));
+            } else if (arg.equals("-fail-fast")) {
+                failFast = true;
+            } else if (arg.equals("-merge-duplicates")) {
+                mergeDuplicates = true;
+            } else if (arg.equals("-timings")) {
+                timings = new ValidationTimings();
+            } else if (arg.equals("-metrics")) {
+                printMetrics = true;
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                paths.add(arg);
+            }
+        }
+
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No documents to validate");
+        }
+
+        for (String path : paths) {
+            addFiles(path, files);
+        }
+    }
+
+    /**
+     * Returns the value of the option at the given index.<br>
+     */
+    private static String getValue(String[] args, int index) {
+
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of option " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses the positive number given as value of an option.<br>
+     */
+    private static int parseCount(String option, String value) {
+
+        try {
+            int count = Integer.parseInt(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        throw new IllegalArgumentException("Option " + option + " requires a positive number: " + value);
+    }
+
+    /**
+     * Adds the files given by a path argument: a file, a directory or a glob pattern.<br>
+     */
+    private static void addFiles(String path, List<File> files) {
+
+        int glob = indexOfGlob(path);
+
+        if (glob >= 0) {
+
+            // The pattern is matched under the deepest directory without glob characters
+            int separator = Math.max(path.lastIndexOf('/', glob), path.lastIndexOf(File.separatorChar, glob));
+            File base = new File((separator >= 0) ? path.substring(0, separator + 1) : ".");
+            Pattern pattern = toPattern((separator >= 0) ? path.substring(separator + 1) : path);
+
+            int count = files.size();
+            addMatchingFiles(base, "", pattern, files);
+            if (files.size() == count) {
+                throw new IllegalArgumentException("No documents match " + path);
+            }
+
+        } else {
+
+            File file = new File(path);
+
+            if (file.isDirectory()) {
+                addDocuments(file, files);
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new IllegalArgumentException("File not found: " + path);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first glob character of the path, or -1 if it's not a pattern.<br>
+     */
+    private static int indexOfGlob(String path) {
+
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converts a glob pattern into a regular expression matching paths separated by '/'.<br>
+     */
+    private static Pattern toPattern(String glob) {
+
+        StringBuffer regex = new StringBuffer();
+
+        for (int i = 0; i < glob.length(); i++) {
+
+            char c = glob.charAt(i);
+
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                // "**/" also matches no directory at all
+                if (i + 2 < glob.length() && (glob.charAt(i + 2) == '/' || glob.charAt(i + 2) == File.separatorChar)) {
+                    regex.append("(.*/)?");
+                    i += 2;
+                } else {
+                    regex.append(".*");
+                    i++;
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == File.separatorChar) {
+                regex.append('/');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Adds the files under the given directory whose relative path matches the pattern.<br>
+     */
+    private static void addMatchingFiles(File directory, String relativePath, Pattern pattern, List<File> files) {
+
+        File[] children = directory.listFiles();
+
+        if (children == null) {
+            return;
+        }
+
+        Arrays.sort(children);
+
+        for (File child : children) {
+
+            String childPath = relativePath + child.getName();
+
+            if (child.isDirectory()) {
+                addMatchingFiles(child, childPath + "/", pattern, files);
+            } else if (pattern.matcher(childPath).matches()) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Adds the hAtom documents under the given directory.<br>
+     */
+    private static void addDocuments(File directory, List<File> files) {
+
+        File[] children = directory.listFiles();
+
+        if (children == null) {
+            return;
+        }
+
+        Arrays.sort(children);
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addDocuments(child, files);
+            } else if (isDocument(child.getName())) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Check whether the file with the given name is an hAtom document.<br>
+     */
+    private static boolean isDocument(String fileName) {
+
+        String name = fileName.toLowerCase();
+
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith("." + extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Validates the given files concurrently, printing their reports in order and the throughput.<br>
+     * @return the exit status
+     * @throws IOException if a file cannot be read
+     */
+    private int validate(List<File> files) throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long start = System.nanoTime();
+        long bytes = 0;
+        int invalidFiles = 0;
+        int reportCount = 0;
+
+        try {
+
+            List<Future<List<Report>>> results = new ArrayList<Future<List<Report>>>();
+
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<List<Report>>() {
+                    public List<Report> call() throws IOException {
+                        return validate(file);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+
+                File file = files.get(i);
+                List<Report> reports = getResult(results.get(i));
+
+                for (Report report : reports) {
+                    out.println(format(file, report));
+                }
+
+                if (!reports.isEmpty()) {
+                    invalidFiles++;
+                    reportCount += reports.size();
+                }
+                bytes += file.length();
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        out.println(files.size() + " documents validated in " + format(seconds) + " s (" + format(files.size() / seconds)
+                + " documents/s, " + format(bytes / seconds / (1024 * 1024)) + " MB/s): " + reportCount + " errors in "
+                + invalidFiles + " documents");
+
+        if (timings != null) {
+            out.println("Validation phases: " + timings.asString());
+        }
+
+        if (printMetrics) {
+            ValidationMetrics metrics = ValidationMetrics.getInstance();
+            out.println("Validation latency: p50 " + format(metrics.getLatencyP50()) + " ms, p99 "
+                    + format(metrics.getLatencyP99()) + " ms, max " + format(metrics.getMaximumLatency())
+                    + " ms; cache hit rate " + format(metrics.getCacheHitRate() * 100) + "%");
+        }
+
+        return (invalidFiles == 0) ? EXIT_VALID : EXIT_INVALID;
+    }
+
+    /**
+     * Waits for the result of a validation.<br>
+     * @throws IOException if the file cannot be read
+     */
+    private static List<Report> getResult(Future<List<Report>> result) throws IOException {
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Validation has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    /**
+     * Validates a single file. A document that cannot be parsed has a single report.<br>
+     * @throws IOException if the file cannot be read
+     */
+    private List<Report> validate(File file) throws IOException {
+
+        ValidatorEngine engine = new ValidatorEngine();
+        engine.setDocumentName(file.getPath());
+        engine.setResultCache(resultCache);
+        engine.setMaximumReports(maximumReports);
+        engine.setFailFast(failFast);
+        engine.setMergeDuplicates(mergeDuplicates);
+
+        // Each engine has its own timings, added to the shared ones at the end
+        if (timings != null) {
+            engine.setTimings(new ValidationTimings());
+        }
+
+        // The file is opened here, so that read errors are not reported as parse errors
+        InputStream is = new FileInputStream(file);
+
+        try {
+            if (encoding != null) {
+                engine.validate(is, encoding);
+            } else {
+                engine.validate(is);
+            }
+        } catch (IOException e) {
+            Report report = new Report();
+            report.setMessage("Document cannot be parsed: " + e.getMessage());
+            engine.getReports().add(report);
+        } finally {
+            is.close();
+            if (timings != null) {
+                timings.add(engine.getTimings());
+            }
+        }
+
+        return engine.getReports();
+    }
+
+    /**
+     * Formats a report on a single line: <code>file:line:column: message</code>, or
+     * <code>file: message (element path)</code> if the position is unknown.<br>
+     */
+    private static String format(File file, Report report) {
+
+        StringBuffer buf = new StringBuffer(file.getPath());
+
+        if (report.getLine() > 0) {
+            buf.append(':').append(report.getLine()).append(':').append(report.getColumn());
+        }
+        buf.append(": ").append(report.getMessage().replaceAll("\\s+", " ").trim());
+
+        if (report.getLine() <= 0 && report.getNodePath().length() > 0) {
+            buf.append(" (").append(report.getNodePath()).append(')');
+        }
+        if (report.getOccurrences() > 1) {
+            buf.append(" [").append(report.getOccurrences()).append(" occurrences]");
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Formats a number with two decimals.<br>
+     */
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    /**
+     * Prints the command line syntax.<br>
+     */
+    private static void printUsage() {
+        System.err.println("Usage: java " + BatchValidator.class.getName()
+                + " [-threads n] [-encoding name] [-cache dir] [-max-reports n] [-fail-fast] [-merge-duplicates] [-timings]"
+                + " [-metrics]"
+                + " file|directory|glob...");
+    }
+}
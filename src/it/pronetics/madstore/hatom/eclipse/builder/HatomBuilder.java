@@ -0,0 +1,346 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.builder;
+
+import it.pronetics.madstore.hatom.eclipse.HatomActivator;
+import it.pronetics.madstore.hatom.eclipse.editor.MarkerPublisher;
+import it.pronetics.madstore.hatom.eclipse.validator.Report;
+import it.pronetics.madstore.hatom.eclipse.validator.ResultCache;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationMonitor;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Builder that validates all the hAtom documents (<code>.xhtml</code> and <code>.html</code> files) of a
+ * project, publishing the validation errors as problem markers (see <code>MarkerPublisher</code>).<br>
+ * A full build validates every document, an incremental build only the documents added or changed since
+ * the last build, as told by the resource delta. Documents are read and validated by a pool of
+ * <code>THREAD_COUNT</code> threads, while markers are updated by the build thread, which owns the
+ * workspace, as soon as each document has been validated.<br>
+ * Validation results are cached in the plugin state location (see <code>ResultCache</code>), so documents
+ * that have already been validated with the same content, even before a restart, are not validated again.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.2
+ */
+public class HatomBuilder extends IncrementalProjectBuilder {
+
+    // Builder ID (see plugin.xml)
+    public static final String BUILDER_ID = "it.pronetics.madstore.hatom.eclipse.HatomPlugin.hatomBuilder";
+
+    // Extensions of the validated files
+    private static final String[] EXTENSIONS = { "xhtml", "html" };
+
+    // Number of threads validating the documents
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    // Changes that require a document to be validated again
+    private static final int CHANGED_FLAGS = IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING;
+
+    // Time after which unused cache entries are removed by clean builds: 30 days
+    private static final long CACHE_ENTRY_LIFETIME = 30L * 24 * 60 * 60 * 1000;
+
+    // Cache of the validation results, shared by all the projects
+    private static ResultCache resultCache;
+
+    /**
+     * Validates the documents of the project: all of them for full builds (or when the delta is not
+     * available), only the added and changed ones otherwise.<br>
+     * @see org.eclipse.core.resources.IncrementalProjectBuilder#build(int, java.util.Map,
+     *      org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    protected IProject[] build(int kind, Map<String, String> args, IProgressMonitor monitor) throws CoreException {
+
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+
+        IResourceDelta delta = (kind == FULL_BUILD) ? null : getDelta(getProject());
+        List<IFile> files = (delta == null) ? getAllDocuments() : getChangedDocuments(delta);
+
+        if (!files.isEmpty()) {
+            validate(files, monitor);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all the markers of the project, and the cached results that have not been used for a long
+     * time.<br>
+     * @see org.eclipse.core.resources.IncrementalProjectBuilder#clean(org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    protected void clean(IProgressMonitor monitor) throws CoreException {
+        getProject().deleteMarkers(MarkerPublisher.MARKER_TYPE, false, IResource.DEPTH_INFINITE);
+        getResultCache().removeUnusedEntries(CACHE_ENTRY_LIFETIME);
+    }
+
+    /**
+     * Returns the cache of the validation results, in the plugin state location.<br>
+     */
+    private static synchronized ResultCache getResultCache() {
+
+        if (resultCache == null) {
+            resultCache = new ResultCache(HatomActivator.getDefault().getStateLocation().append("results").toFile());
+        }
+
+        return resultCache;
+    }
+
+    /**
+     * Returns all the documents of the project.<br>
+     */
+    private List<IFile> getAllDocuments() throws CoreException {
+
+        final List<IFile> files = new ArrayList<IFile>();
+
+        // Proxies do not create a resource object for each visited resource
+        getProject().accept(new IResourceProxyVisitor() {
+            public boolean visit(IResourceProxy proxy) {
+                if (proxy.isDerived()) {
+                    return false;
+                }
+                if (proxy.getType() == IResource.FILE && isDocument(proxy.getName())) {
+                    files.add((IFile) proxy.requestResource());
+                }
+                return true;
+            }
+        }, IResource.NONE);
+
+        return files;
+    }
+
+    /**
+     * Returns the documents added or changed according to the given delta. Removed documents have no
+     * markers left, since markers are removed together with their resource.<br>
+     */
+    private List<IFile> getChangedDocuments(IResourceDelta delta) throws CoreException {
+
+        final List<IFile> files = new ArrayList<IFile>();
+
+        delta.accept(new IResourceDeltaVisitor() {
+            public boolean visit(IResourceDelta child) {
+
+                IResource resource = child.getResource();
+
+                if (resource.isDerived()) {
+                    return false;
+                }
+
+                if (resource.getType() == IResource.FILE && isDocument(resource.getName())) {
+                    // Marker changes, including the ones made by this builder, are ignored
+                    if (child.getKind() == IResourceDelta.ADDED
+                            || (child.getKind() == IResourceDelta.CHANGED && (child.getFlags() & CHANGED_FLAGS) != 0)) {
+                        files.add((IFile) resource);
+                    }
+                }
+                return true;
+            }
+        });
+
+        return files;
+    }
+
+    /**
+     * Check whether the file with the given name is an hAtom document.<br>
+     */
+    private static boolean isDocument(String fileName) {
+
+        int dot = fileName.lastIndexOf('.');
+
+        if (dot < 0) {
+            return false;
+        }
+
+        String extension = fileName.substring(dot + 1);
+
+        for (String documentExtension : EXTENSIONS) {
+            if (documentExtension.equalsIgnoreCase(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Validates the given documents with a pool of threads, updating the markers of each document as
+     * soon as it has been validated.<br>
+     * @throws OperationCanceledException if the build is canceled
+     */
+    private void validate(List<IFile> files, final IProgressMonitor monitor) throws CoreException {
+
+        monitor.beginTask("Validating hAtom documents", files.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREAD_COUNT, files.size()), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "hAtom document validator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        ValidationMonitor validationMonitor = new ValidationMonitor() {
+            public boolean isCanceled() {
+                return monitor.isCanceled();
+            }
+        };
+
+        try {
+
+            CompletionService<DocumentResult> results = new ExecutorCompletionService<DocumentResult>(executor);
+
+            for (IFile file : files) {
+                results.submit(new DocumentValidation(file, validationMonitor, getResultCache()));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+
+                DocumentResult result = results.take().get();
+
+                if (monitor.isCanceled()) {
+                    // Documents not validated yet must be validated by the next build
+                    forgetLastBuiltState();
+                    throw new OperationCanceledException();
+                }
+
+                monitor.subTask(result.file.getFullPath().toString());
+
+                if (result.reports != null) {
+                    MarkerPublisher.update(result.file, result.reports);
+                }
+                monitor.worked(1);
+            }
+
+        } catch (InterruptedException e) {
+            forgetLastBuiltState();
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } finally {
+            executor.shutdownNow();
+            monitor.done();
+        }
+    }
+
+    /**
+     * Reports of a validated document.<br>
+     */
+    private static class DocumentResult {
+
+        // The validated document
+        private IFile file;
+
+        // Validation reports, null if the document could not be read
+        private List<Report> reports;
+
+        private DocumentResult(IFile file, List<Report> reports) {
+            this.file = file;
+            this.reports = reports;
+        }
+    }
+
+    /**
+     * Validation of a single document, performed by a thread of the pool.<br>
+     * The document is decoded with its workspace encoding, so that reports know their position.<br>
+     */
+    private static class DocumentValidation implements Callable<DocumentResult> {
+
+        // The document to be validated
+        private IFile file;
+
+        // Tells the validation whether the build has been canceled
+        private ValidationMonitor monitor;
+
+        // Cache of the validation results
+        private ResultCache resultCache;
+
+        private DocumentValidation(IFile file, ValidationMonitor monitor, ResultCache resultCache) {
+            this.file = file;
+            this.monitor = monitor;
+            this.resultCache = resultCache;
+        }
+
+        public DocumentResult call() {
+
+            ValidatorEngine engine = new ValidatorEngine();
+            engine.setDocumentName(file.getFullPath().toString());
+            engine.setMonitor(monitor);
+            engine.setResultCache(resultCache);
+
+            try {
+
+                InputStream is = file.getContents();
+
+                try {
+                    engine.validate(is, file.getCharset());
+                } finally {
+                    is.close();
+                }
+
+            } catch (CoreException e) {
+                // The document cannot be read (ie: it is out of sync with the file system)
+                return new DocumentResult(file, null);
+            } catch (IOException e) {
+
+                if (engine.isCanceled()) {
+                    return new DocumentResult(file, null);
+                }
+
+                // The document is not well formed, or cannot be read
+                Report report = new Report();
+                report.setMessage("Document cannot be parsed: " + e.getMessage());
+
+                List<Report> reports = new ArrayList<Report>();
+                reports.add(report);
+
+                return new DocumentResult(file, reports);
+            }
+
+            return new DocumentResult(file, engine.getReports());
+        }
+    }
+}
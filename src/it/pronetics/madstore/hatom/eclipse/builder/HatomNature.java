@@ -0,0 +1,98 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.builder;
+
+import it.pronetics.madstore.hatom.eclipse.editor.MarkerPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IProjectNature;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Nature of the projects whose hAtom documents are validated by <code>HatomBuilder</code>.<br>
+ * Adding the nature to a project adds the builder to its build specification, removing it removes the
+ * builder and its markers.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class HatomNature implements IProjectNature {
+
+    // Nature ID (see plugin.xml)
+    public static final String NATURE_ID = "it.pronetics.madstore.hatom.eclipse.HatomPlugin.hatomNature";
+
+    // The project this nature belongs to
+    private IProject project;
+
+    /**
+     * Adds the hAtom builder to the project.<br>
+     */
+    public void configure() throws CoreException {
+
+        IProjectDescription description = project.getDescription();
+        ICommand[] commands = description.getBuildSpec();
+
+        for (ICommand command : commands) {
+            if (HatomBuilder.BUILDER_ID.equals(command.getBuilderName())) {
+                return;
+            }
+        }
+
+        ICommand[] newCommands = new ICommand[commands.length + 1];
+        System.arraycopy(commands, 0, newCommands, 0, commands.length);
+
+        ICommand command = description.newCommand();
+        command.setBuilderName(HatomBuilder.BUILDER_ID);
+        newCommands[commands.length] = command;
+
+        description.setBuildSpec(newCommands);
+        project.setDescription(description, null);
+    }
+
+    /**
+     * Removes the hAtom builder and its markers from the project.<br>
+     */
+    public void deconfigure() throws CoreException {
+
+        IProjectDescription description = project.getDescription();
+        List<ICommand> commands = new ArrayList<ICommand>();
+
+        for (ICommand command : description.getBuildSpec()) {
+            if (!HatomBuilder.BUILDER_ID.equals(command.getBuilderName())) {
+                commands.add(command);
+            }
+        }
+
+        description.setBuildSpec(commands.toArray(new ICommand[commands.size()]));
+        project.setDescription(description, null);
+
+        project.deleteMarkers(MarkerPublisher.MARKER_TYPE, false, IResource.DEPTH_INFINITE);
+    }
+
+    public IProject getProject() {
+        return project;
+    }
+
+    public void setProject(IProject project) {
+        this.project = project;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.builder;
+
+import it.pronetics.madstore.hatom.eclipse.HatomActivator;
+
+import java.util.Iterator;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+/**
+ * Action of the project context menu that enables or disables the validation of the hAtom documents of the
+ * selected projects, by adding or removing the hAtom nature.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public class ToggleNatureAction implements IObjectActionDelegate {
+
+    // Current selection of the workbench
+    private ISelection selection;
+
+    /**
+     * Adds the hAtom nature to the selected projects that don't have it, removes it from the others.<br>
+     */
+    public void run(IAction action) {
+
+        if (!(selection instanceof IStructuredSelection)) {
+            return;
+        }
+
+        for (Iterator<?> it = ((IStructuredSelection) selection).iterator(); it.hasNext();) {
+
+            Object element = it.next();
+            IProject project = null;
+
+            if (element instanceof IProject) {
+                project = (IProject) element;
+            } else if (element instanceof IAdaptable) {
+                project = ((IAdaptable) element).getAdapter(IProject.class);
+            }
+
+            if (project != null) {
+                toggleNature(project);
+            }
+        }
+    }
+
+    public void selectionChanged(IAction action, ISelection selection) {
+        this.selection = selection;
+    }
+
+    public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+    }
+
+    /**
+     * Adds or removes the hAtom nature of the given project.<br>
+     */
+    private void toggleNature(IProject project) {
+
+        try {
+
+            IProjectDescription description = project.getDescription();
+            String[] natures = description.getNatureIds();
+
+            for (int i = 0; i < natures.length; i++) {
+                if (HatomNature.NATURE_ID.equals(natures[i])) {
+                    String[] newNatures = new String[natures.length - 1];
+                    System.arraycopy(natures, 0, newNatures, 0, i);
+                    System.arraycopy(natures, i + 1, newNatures, i, natures.length - i - 1);
+                    description.setNatureIds(newNatures);
+                    project.setDescription(description, null);
+                    return;
+                }
+            }
+
+            String[] newNatures = new String[natures.length + 1];
+            System.arraycopy(natures, 0, newNatures, 0, natures.length);
+            newNatures[natures.length] = HatomNature.NATURE_ID;
+            description.setNatureIds(newNatures);
+            project.setDescription(description, null);
+
+        } catch (CoreException e) {
+            HatomActivator.getDefault().getLog().log(e.getStatus());
+        }
+    }
+}
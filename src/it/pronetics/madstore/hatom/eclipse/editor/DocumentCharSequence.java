@@ -0,0 +1,66 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.editor;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * CharSequence view of an editor document.<br>
+ * Characters are read from the document when they are requested, so the content is not copied. The
+ * document must not be modified while the sequence is in use.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class DocumentCharSequence implements CharSequence {
+
+    // The editor document
+    private IDocument document;
+
+    /**
+     * Creates a new view of the given document.<br>
+     * @param document the editor document
+     */
+    public DocumentCharSequence(IDocument document) {
+        this.document = document;
+    }
+
+    public int length() {
+        return document.getLength();
+    }
+
+    public char charAt(int index) {
+        try {
+            return document.getChar(index);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        try {
+            return document.get(start, end - start);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return document.get();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.editor;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * Reader over the content of an editor document.<br>
+ * The content is read in small chunks, as the parser asks for it, so the whole document is never
+ * copied into a single String. The document must not be modified while it is being read.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class DocumentReader extends Reader {
+
+    // The editor document
+    private IDocument document;
+
+    // Position of the next character to be read
+    private int position;
+
+    /**
+     * Creates a new reader over the given document.<br>
+     * @param document the editor document
+     */
+    public DocumentReader(IDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * Reads characters into a portion of an array.<br>
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if (document == null) {
+            throw new IOException("Reader has been closed");
+        }
+
+        int count = Math.min(len, document.getLength() - position);
+
+        if (count <= 0) {
+            return (len == 0) ? 0 : -1;
+        }
+
+        try {
+            document.get(position, count).getChars(0, count, cbuf, off);
+        } catch (BadLocationException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * Releases the document.<br>
+     */
+    @Override
+    public void close() {
+        document = null;
+    }
+}
@@ -17,18 +17,24 @@ package it.pronetics.madstore.hatom.eclipse.editor;
 
 import java.util.List;
 
+import org.eclipse.jface.viewers.DoubleClickEvent;
+import org.eclipse.jface.viewers.IDoubleClickListener;
 import org.eclipse.jface.viewers.ListViewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.part.ViewPart;
+import org.eclipse.ui.texteditor.ITextEditor;
 
 import it.pronetics.madstore.hatom.eclipse.validator.Report;
-import it.pronetics.madstore.hatom.eclipse.validator.TimeMeasurer;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationTimings;
 
 /**
  * Handler for the IDE's output "view" tab, where validation report list is displayed.<br>
+ * Double clicking a report whose position is known selects its element in the active editor.<br>
+ * The time of each validation phase, including the rendering of the reports, is shown above them.<br>
  * @author Andrea Castello
- * @version 1.4
+ * @version 1.6
  */
 public class HatomEditorView extends ViewPart {
 
@@ -41,6 +47,10 @@ public class HatomEditorView extends ViewPart {
     // Widget used to display the list of reports.
     ListViewer viewer;
 
+    // Reports being displayed, and index of the first one in the list
+    private List<Report> reports;
+    private int firstReportIndex;
+
     /**
      * Creates a new instance of HatomEditorView.<br>
      */
@@ -66,6 +76,30 @@ public class HatomEditorView extends ViewPart {
 
         viewer = new ListViewer(parent, SWT.V_SCROLL);
 
+        viewer.addDoubleClickListener(new IDoubleClickListener() {
+            public void doubleClick(DoubleClickEvent event) {
+                revealSelectedReport();
+            }
+        });
+    }
+
+    /**
+     * Selects the element of the selected report in the active editor, if its position is known.<br>
+     */
+    private void revealSelectedReport() {
+
+        int index = viewer.getList().getSelectionIndex() - firstReportIndex;
+
+        if (reports == null || index < 0 || index >= reports.size()) {
+            return;
+        }
+
+        Report report = reports.get(index);
+        IEditorPart editor = getSite().getPage().getActiveEditor();
+
+        if (report.getOffset() >= 0 && editor instanceof ITextEditor) {
+            ((ITextEditor) editor).selectAndReveal(report.getOffset(), report.getLength());
+        }
     }
 
     /**
@@ -80,9 +114,9 @@ public class HatomEditorView extends ViewPart {
     /**
      * Shows all the reports inside the ListViewer widget.<br>
      * @param reports The list of validation reports.
-     * @param measure the time measurer (can be null)
+     * @param timings the validation timings (can be null), where the rendering time is added
      */
-    public void printReports(List<Report> reports, TimeMeasurer measurer) {
+    public void printReports(List<Report> reports, ValidationTimings timings) {
         // Before populating the ListViewer, since the view is allocated only
         // once, we remove
         // all the possible occurrences of previous validation tasks.<br>
@@ -90,22 +124,48 @@ public class HatomEditorView extends ViewPart {
 
         viewer.refresh();
 
-        if (measurer != null) {
-            viewer.getList().add("Validation completed in " + measurer.getElapsedTime() + " milliseconds");
-        }
+        this.reports = reports;
+        firstReportIndex = 0;
+
+        long start = System.nanoTime();
 
         if (reports != null) {
 
             if (reports.size() > 0) {
                 viewer.getList().add(reports.size() + " errors found");
+                firstReportIndex = viewer.getList().getItemCount();
                 for (Report report : reports) {
-                    viewer.getList().add(report.asString());
+                    viewer.getList().add(getLocation(report) + report.asString());
                 }
-                viewer.getList().select(0);
             } else {
                 viewer.getList().add("File contains valid hAtom microformat");
             }
         }
+
+        // Timings are inserted above the reports once they have been rendered
+        if (timings != null) {
+
+            timings.add(ValidationTimings.RENDERING, System.nanoTime() - start);
+
+            String[] lines = timings.asString().split("\n");
+
+            viewer.getList().add("Validation completed in " + ValidationTimings.format(timings.getTotalTime()), 0);
+            for (int i = 0; i < lines.length; i++) {
+                viewer.getList().add(lines[i], i + 1);
+            }
+            firstReportIndex += lines.length + 1;
+        }
+
+        if (reports != null && reports.size() > 0) {
+            viewer.getList().select(0);
+        }
+    }
+
+    /**
+     * Returns the line and column of the report, if known, as a prefix of its description.<br>
+     */
+    private static String getLocation(Report report) {
+        return (report.getLine() > 0) ? "Line " + report.getLine() + ", column " + report.getColumn() + ": " : "";
     }
 
     /**
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.editor;
+
+import it.pronetics.madstore.hatom.eclipse.HatomEditor;
+import it.pronetics.madstore.hatom.eclipse.validator.Report;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidationMonitor;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.reconciler.DirtyRegion;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModelExtension;
+import org.eclipse.jface.text.source.ISourceViewer;
+
+/**
+ * Validates the editor document in the background while it is being edited, and shows the validation
+ * errors as annotations of the editor.<br>
+ * The strategy is run by the reconciler of the editor (see <code>XMLConfiguration</code>) when typing pauses.
+ * Validation uses the incremental validator of the editor, so that only the edited hentries are validated
+ * again. When the document changes while it is being validated, the reconciler cancels the progress
+ * monitor: the validation stops and its result is discarded, since a new one will follow.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class HatomReconcilingStrategy implements IReconcilingStrategy, IReconcilingStrategyExtension {
+
+    // Type of the annotations of the validation errors
+    public static final String ANNOTATION_TYPE = "org.eclipse.ui.workbench.texteditor.error";
+
+    // Editor whose document is validated
+    private HatomEditor editor;
+
+    // Viewer whose annotation model shows the validation errors
+    private ISourceViewer sourceViewer;
+
+    // Document to be validated
+    private IDocument document;
+
+    // Progress monitor of the reconciler, canceled when the document changes
+    private IProgressMonitor monitor;
+
+    // Annotations added by the last validation
+    private Annotation[] annotations = new Annotation[0];
+
+    /**
+     * Creates a new strategy for the given editor.<br>
+     * @param editor the editor whose document is validated
+     * @param sourceViewer the viewer of the editor
+     */
+    public HatomReconcilingStrategy(HatomEditor editor, ISourceViewer sourceViewer) {
+        this.editor = editor;
+        this.sourceViewer = sourceViewer;
+    }
+
+    public void setDocument(IDocument document) {
+        this.document = document;
+    }
+
+    public void setProgressMonitor(IProgressMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Validates the document when the editor is opened.<br>
+     */
+    public void initialReconcile() {
+        validate();
+    }
+
+    /**
+     * Validates the document after it has been edited. The incremental validator already knows the edited
+     * regions, so the dirty region is not used.<br>
+     */
+    public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion) {
+        validate();
+    }
+
+    /**
+     * Validates the document after it has been edited.<br>
+     */
+    public void reconcile(IRegion partition) {
+        validate();
+    }
+
+    /**
+     * Validates the document and replaces the annotations of the previous validation, unless the validation
+     * has been canceled.<br>
+     */
+    private void validate() {
+
+        if (document == null) {
+            return;
+        }
+
+        ValidatorEngine engine = new ValidatorEngine();
+        engine.setMonitor(new ValidationMonitor() {
+            public boolean isCanceled() {
+                return monitor != null && monitor.isCanceled();
+            }
+        });
+
+        Map<Annotation, Position> errors = new HashMap<Annotation, Position>();
+
+        try {
+
+            editor.getIncrementalValidator(document).validate(engine, new DocumentCharSequence(document));
+
+            if (engine.isCanceled()) {
+                return;
+            }
+
+            addAnnotations(engine.getReports(), errors);
+
+        } catch (IOException e) {
+
+            if (engine.isCanceled()) {
+                return;
+            }
+
+            // The document is not well formed
+            errors.put(new Annotation(ANNOTATION_TYPE, false, e.getMessage()), new Position(0, 0));
+
+        } catch (IndexOutOfBoundsException e) {
+            // The document has changed while it was being read: it will be validated again
+            return;
+        }
+
+        publishAnnotations(errors);
+    }
+
+    /**
+     * Creates an annotation for each report, placed on the start tag of the element.<br>
+     * @param reports the validation reports
+     * @param errors map where annotations and their positions are added
+     */
+    private void addAnnotations(List<Report> reports, Map<Annotation, Position> errors) {
+
+        for (Report report : reports) {
+
+            Position position = (report.getOffset() >= 0) ? new Position(report.getOffset(), report.getLength()) : new Position(0, 0);
+            errors.put(new Annotation(ANNOTATION_TYPE, false, report.getMessage()), position);
+        }
+    }
+
+    /**
+     * Replaces the annotations of the previous validation with the given ones.<br>
+     * @param errors the new annotations and their positions
+     */
+    private void publishAnnotations(Map<Annotation, Position> errors) {
+
+        IAnnotationModel model = sourceViewer.getAnnotationModel();
+
+        if (model == null) {
+            return;
+        }
+
+        Annotation[] removed = annotations;
+        annotations = errors.keySet().toArray(new Annotation[errors.size()]);
+
+        if (model instanceof IAnnotationModelExtension) {
+            ((IAnnotationModelExtension) model).replaceAnnotations(removed, errors);
+        } else {
+            for (Annotation annotation : removed) {
+                model.removeAnnotation(annotation);
+            }
+            for (Map.Entry<Annotation, Position> error : errors.entrySet()) {
+                model.addAnnotation(error.getKey(), error.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.editor;
+
+import it.pronetics.madstore.hatom.eclipse.validator.Report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Publishes the validation reports as problem markers of the validated resource.<br>
+ * All the markers of a validation run are updated inside a single workspace operation, so that the workspace
+ * notifies a single resource change. Markers equal to the ones of the previous run are kept: only the markers
+ * of the errors that have been fixed are deleted, and only the ones of the new errors are created.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class MarkerPublisher {
+
+    // Type of the problem markers of the validation errors (see plugin.xml)
+    public static final String MARKER_TYPE = "it.pronetics.madstore.hatom.eclipse.HatomPlugin.problem";
+
+    // Attributes of the markers, in the order of the values returned by getAttributeValues
+    private static final String[] ATTRIBUTE_NAMES = { IMarker.MESSAGE, IMarker.SEVERITY, IMarker.LOCATION,
+            IMarker.LINE_NUMBER, IMarker.CHAR_START, IMarker.CHAR_END };
+
+    private MarkerPublisher() {
+    }
+
+    /**
+     * Schedules a job that updates the markers of the given resource with the given reports.<br>
+     * Validation does not wait for the workspace, which can be busy (ie: building).<br>
+     * @param resource the validated resource
+     * @param reports the reports of the validation
+     */
+    public static void publish(final IResource resource, List<Report> reports) {
+
+        final List<Object[]> markerValues = getMarkerValues(reports);
+
+        WorkspaceJob job = new WorkspaceJob("Updating hAtom problem markers") {
+            @Override
+            public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+                updateMarkers(resource, markerValues);
+                return Status.OK_STATUS;
+            }
+        };
+
+        job.setRule(resource.getWorkspace().getRuleFactory().markerRule(resource));
+        job.setSystem(true);
+        job.schedule();
+    }
+
+    /**
+     * Updates the markers of the given resource with the given reports, inside a single workspace
+     * operation.<br>
+     * @param resource the validated resource
+     * @param reports the reports of the validation
+     * @throws CoreException in case the markers cannot be updated
+     */
+    public static void update(final IResource resource, List<Report> reports) throws CoreException {
+
+        final List<Object[]> markerValues = getMarkerValues(reports);
+
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                updateMarkers(resource, markerValues);
+            }
+        };
+
+        IWorkspace workspace = resource.getWorkspace();
+        workspace.run(runnable, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, null);
+    }
+
+    /**
+     * Deletes the markers that are not in the given list, and creates the missing ones.<br>
+     * @param resource the validated resource
+     * @param markerValues attribute values of the markers that the resource must have
+     */
+    private static void updateMarkers(IResource resource, List<Object[]> markerValues) throws CoreException {
+
+        // Existing markers by attribute values: several markers can have the same ones
+        Map<List<Object>, List<IMarker>> existingMarkers = new HashMap<List<Object>, List<IMarker>>();
+
+        for (IMarker marker : resource.findMarkers(MARKER_TYPE, false, IResource.DEPTH_ZERO)) {
+
+            List<Object> key = Arrays.asList(marker.getAttributes(ATTRIBUTE_NAMES));
+            List<IMarker> markers = existingMarkers.get(key);
+
+            if (markers == null) {
+                markers = new ArrayList<IMarker>();
+                existingMarkers.put(key, markers);
+            }
+            markers.add(marker);
+        }
+
+        List<Object[]> createdValues = new ArrayList<Object[]>();
+
+        for (Object[] values : markerValues) {
+
+            List<IMarker> markers = existingMarkers.get(Arrays.asList(values));
+
+            if (markers != null && !markers.isEmpty()) {
+                markers.remove(markers.size() - 1);
+            } else {
+                createdValues.add(values);
+            }
+        }
+
+        List<IMarker> deletedMarkers = new ArrayList<IMarker>();
+
+        for (List<IMarker> markers : existingMarkers.values()) {
+            deletedMarkers.addAll(markers);
+        }
+
+        if (!deletedMarkers.isEmpty()) {
+            resource.getWorkspace().deleteMarkers(deletedMarkers.toArray(new IMarker[deletedMarkers.size()]));
+        }
+
+        for (Object[] values : createdValues) {
+            IMarker marker = resource.createMarker(MARKER_TYPE);
+            marker.setAttributes(ATTRIBUTE_NAMES, values);
+        }
+    }
+
+    /**
+     * Returns the marker attribute values of each report.<br>
+     */
+    private static List<Object[]> getMarkerValues(List<Report> reports) {
+
+        List<Object[]> markerValues = new ArrayList<Object[]>(reports.size());
+
+        for (Report report : reports) {
+            markerValues.add(getAttributeValues(report));
+        }
+
+        return markerValues;
+    }
+
+    /**
+     * Returns the marker attribute values of the given report, null for the unknown ones, in the order of
+     * <code>ATTRIBUTE_NAMES</code>.<br>
+     */
+    private static Object[] getAttributeValues(Report report) {
+
+        // Problems are shown on a single line
+        String message = report.getMessage().replaceAll("\\s+", " ").trim();
+
+        if (report.getOccurrences() > 1) {
+            message += " (" + report.getOccurrences() + " occurrences)";
+        }
+
+        Object[] values = new Object[ATTRIBUTE_NAMES.length];
+        values[0] = message;
+        values[1] = Integer.valueOf(IMarker.SEVERITY_ERROR);
+
+        if (report.getOffset() >= 0) {
+            values[3] = Integer.valueOf(report.getLine());
+            values[4] = Integer.valueOf(report.getOffset());
+            values[5] = Integer.valueOf(report.getOffset() + report.getLength());
+        } else if (report.getNodePath().length() > 0) {
+            // Without a position, the element is located by its path
+            values[2] = report.getNodePath();
+        }
+
+        return values;
+    }
+}
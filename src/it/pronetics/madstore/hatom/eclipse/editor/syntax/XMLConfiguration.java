@@ -15,7 +15,9 @@
  */
 package it.pronetics.madstore.hatom.eclipse.editor.syntax;
 
+import it.pronetics.madstore.hatom.eclipse.HatomEditor;
 import it.pronetics.madstore.hatom.eclipse.editor.ColorManager;
+import it.pronetics.madstore.hatom.eclipse.editor.HatomReconcilingStrategy;
 import it.pronetics.madstore.hatom.eclipse.editor.completion.HatomKeywordAssistProcessor;
 import it.pronetics.madstore.hatom.eclipse.prefs.PreferencesPage;
 
@@ -27,14 +29,16 @@ import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
 import org.eclipse.jface.text.contentassist.IContentAssistant;
 import org.eclipse.jface.text.presentation.IPresentationReconciler;
 import org.eclipse.jface.text.presentation.PresentationReconciler;
+import org.eclipse.jface.text.reconciler.IReconciler;
+import org.eclipse.jface.text.reconciler.MonoReconciler;
 import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
 import org.eclipse.jface.text.rules.Token;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.SourceViewerConfiguration;
 
 /**
- * Handles XML code configuration for syntax highlight and code completion.<br>
- * @version 1.3
+ * Handles XML code configuration for syntax highlight, code completion and background validation.<br>
+ * @version 1.4
  * @author Andrea Castello
  */
 public class XMLConfiguration extends SourceViewerConfiguration {
@@ -45,13 +49,46 @@ public class XMLConfiguration extends SourceViewerConfiguration {
     // Sub-scanner for the XML tags
     private XMLTagScanner tagScanner;
     private ColorManager colorManager;
+    // Editor whose document is validated in background, can be null
+    private HatomEditor editor;
+
+    // Delay, in milliseconds, between the last keystroke and the background validation
+    public static final int VALIDATION_DELAY = 500;
 
     /**
-     * Creates a new instance of XMLConfiguration.<br>
+     * Creates a new instance of XMLConfiguration, without background validation.<br>
      * @param colorManager the color manager.<br>
      */
     public XMLConfiguration(ColorManager colorManager) {
+        this(colorManager, null);
+    }
+
+    /**
+     * Creates a new instance of XMLConfiguration, that validates the document of the given editor while it is
+     * being edited.<br>
+     * @param colorManager the color manager.<br>
+     * @param editor the editor
+     */
+    public XMLConfiguration(ColorManager colorManager, HatomEditor editor) {
         this.colorManager = colorManager;
+        this.editor = editor;
+    }
+
+    /**
+     * Provides a reconciler that validates the editor document in background, once typing pauses.<br>
+     * A validation that is still running when the document changes again is canceled.<br>
+     */
+    @Override
+    public IReconciler getReconciler(ISourceViewer sourceViewer) {
+
+        if (editor == null) {
+            return null;
+        }
+
+        MonoReconciler reconciler = new MonoReconciler(new HatomReconcilingStrategy(editor, sourceViewer), false);
+        reconciler.setDelay(VALIDATION_DELAY);
+
+        return reconciler;
     }
 
     /**
@@ -16,17 +16,14 @@
 
 package it.pronetics.madstore.hatom.eclipse.validator;
 
-import java.io.IOException;
-
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Analyzer for hAtom "author" nodes.<br>
  * Actual implementation checks the following requisites:<br>
  * <li>author is a class attribute <li>author is a vcard (with fn child attribute). <br>
  * @author Andrea Castello
- * @version 1.1
+ * @version 1.5
  */
 public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
 
@@ -34,6 +31,9 @@ public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
     private static final String ATTR_VCARD = "vcard";
     private static final String ATTR_FN = "fn";
 
+    // Composed attribute value of a valid author node
+    private static final String ATTR_VCARD_AUTHOR = ATTR_VCARD + " " + KEYWORD_AUTHOR;
+
     /**
      * Creates a new instance of AuthorVcardAnalyzer.<br>
      */
@@ -54,28 +54,25 @@ public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
      * Performs analysis of a possible author hAtom node.<br>
      */
     @Override
-    public void analyze() throws IOException {
-        // Composed attribute value
-        String vcardAuthorAttr = ATTR_VCARD + " " + getAttributeValue();
-
-        if (!XMLUtils.nodeAttributeMatches(getNode(), getAttributeName(), vcardAuthorAttr)) {
-
-            searchInvalidAttributes();
+    public boolean analyzeNode() {
 
-        } else { // Is a valid hAtom node, check if there are nested nodes
-
-            String[] keys = new String[HATOM_HENTRY_ATTRIBUTES.size()];
-            HATOM_HENTRY_ATTRIBUTES.keySet().toArray(keys);
+        if (!super.analyzeNode()) {
+            return false;
+        }
 
-            for (int i = 0; i < keys.length; i++) {
-                checkNestedNode(getNode(), getAttributeName(), keys[i]);
-            }
+        // node is a vcard author, but further validation has to be done. We must check that node has
+        // a child node with class attribute "fn"
+        checkFn();
 
-            // node is a vcard author, but further validation has to be done. We must check that node has
-            // a child node with class attribute "fn"
-            checkFn();
-        }
+        return true;
+    }
 
+    /**
+     * A valid author node is a vcard author.<br>
+     */
+    @Override
+    protected boolean isValidNode() {
+        return XMLUtils.nodeAttributeMatches(getNode(), getAttributeName(), ATTR_VCARD_AUTHOR);
     }
 
     /**
@@ -83,20 +80,24 @@ public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
      */
     private void checkFn() {
 
-        NodeList nl = getNode().getChildNodes();
-        if (nl != null) {
-            Node child;
-            for (int i = 0; i < nl.getLength(); i++) {
-                child = nl.item(i);
-                if (isFn(child)) {
-                    return;
-                }
+        // Children are reached through their siblings rather than a NodeList, whose cache is shared by the
+        // whole document, since hentries can be validated in parallel
+        for (Node child = getNode().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (isFn(child)) {
+                return;
             }
-            // If we arrive here, no fn attribute has been found
-            createNoFnReport();
-        } else {
-            createNoFnReport();
         }
+        // If we arrive here, no fn attribute has been found
+        createNoFnReport();
+    }
+
+    /**
+     * Check whether the given attribute value is the one of a valid author node (vcard author).<br>
+     * @param attrValue the attribute value (can be null)
+     * @return <code>true</code> if the value matches, <code>false</code> otherwise
+     */
+    static boolean isVcardAuthor(String attrValue) {
+        return attrValue != null && attrValue.length() > 0 && XMLUtils.attributeValueMatches(attrValue, ATTR_VCARD_AUTHOR);
     }
 
     /**
@@ -104,9 +105,8 @@ public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
      */
     private void createNoFnReport() {
         String message = "Node" + getNode().getNodeName() + "must be a valid hCard and must contain a fn property";
-        Report report = new Report(message, getNode());
-        engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-        engine.addReport(report);
+        Report report = new Report(Report.RULE_AUTHOR_HCARD, message, getNode());
+        addReport(report);
     }
 
     /**
@@ -115,6 +115,6 @@ public class AuthorVcardAnalyzer extends HentryChildAnalyzer {
      * @return <code>true</code> if <code>child</code> is fn attribute, <code>false</code> otherwise
      */
     private boolean isFn(Node child) {
-        return XMLUtils.nodeAttributeMatches(child, ValidatorEngine.ATTR_CLASS, ATTR_FN);
+        return matches(child, ValidatorEngine.ATTR_CLASS, ATTR_FN);
     }
 }
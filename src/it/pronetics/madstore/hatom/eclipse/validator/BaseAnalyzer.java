@@ -29,7 +29,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.traversal.NodeIterator;
 
 /**
  * Base class for hfeed microformats analysis. Provides common methods to all the analyzers.<br>
@@ -40,7 +39,7 @@ import org.w3c.dom.traversal.NodeIterator;
  * 
  *  
  * @author Andrea Castello
- * @version 1.4
+ * @version 1.9
  */
 public abstract class BaseAnalyzer implements Analyzer {
     
@@ -61,14 +60,11 @@ public abstract class BaseAnalyzer implements Analyzer {
     // Name of the document to be validated
     private String documentName = "";
     
-    // Instance of the engine used to validate the documents
-    protected ValidatorEngine engine;
-    
     // DOM document cointaining the whole XHTML document to be validated
     private Document xhtmlDoc;
     
-    // Iterator on the DOM document object
-    protected NodeIterator nodeIterator;
+    // Index of the hAtom keywords used in the document
+    private KeywordIndex keywordIndex;
     
     // Node to be analyzed (can be the same of Document in case of "page hfeed"
     protected Node node;
@@ -76,6 +72,12 @@ public abstract class BaseAnalyzer implements Analyzer {
     // Cache for generic attribute values lists
     protected Map<String, List<String>> attrValueCache;
     
+    // Sink that collects the reports of the validation run
+    private ReportSink reportSink;
+    
+    // Time spent in each validation phase, null if it's not recorded
+    private ValidationTimings timings;
+    
     /**
      * Method that all the subclasses must implement in order to perform some kind of analysis on hAtom nodes.<br>
      * 
@@ -108,31 +110,30 @@ public abstract class BaseAnalyzer implements Analyzer {
     
     
     /**
-     * Search for a node with the given name and attribute.<br>
+     * Search for the nodes with the given attribute name and value that are contained in the given node.<br>
+     * Nodes nested inside another matching node are not returned: they are checked by
+     * <code>checkNestedNodes</code>.<br>
+     * The document is not modified: matching nodes are taken from the document's <code>KeywordIndex</code>.<br>
+     * 
      * @param node Node to be searched
      * @param attrName name of the attribute to be found
      * @param attrValue value of the attribute to be checked
-     * @return
+     * @return the matching nodes, in document order
      */
     protected List<Node> searchNodes(Node node, String attrName, String attrValue) {
         
-        setNodeIterator(XMLUtils.getNodeIterator(getXhtmlDoc(), node));
-        
-        
         List<Node> matchingList = new ArrayList<Node>();
-        Node n;
-        while((n = getNodeIterator().nextNode())!=null){
+        Node lastMatch = null;
+        
+        for (Node n : keywordIndex.getNodes(attrName, attrValue)) {
             
-            if (XMLUtils.nodeAttributeMatches(n, attrName, attrValue)){
+            // Since nodes are in document order, a nested node always follows the node containing it
+            if (XMLUtils.isContained(n, node) && (lastMatch == null || !XMLUtils.isContained(n, lastMatch))) {
                 matchingList.add(n);
-                if( n.getParentNode() != null ){
-                    n.getParentNode().removeChild(n); // we remove the matching child from the document
-                }
+                lastMatch = n;
             }
         }
         
-        getNodeIterator().detach();
-        
         return matchingList;
     }
     
@@ -155,10 +156,9 @@ public abstract class BaseAnalyzer implements Analyzer {
             // If we catch a child node that matches the given values, it is a nested node
             for (int i = 0; i < nodeList.getLength(); i++) {
                 Node child = nodeList.item(i);
-                if (XMLUtils.nodeAttributeMatches(child, attrName, attrValue)) {
-                    report = new Report(attrValue + " keyword cannot be contained inside another hAtom node of the same level", child);
-                    engine = ValidatorCache.getInstance().getEngine(documentName);
-                    engine.addReport(report);
+                if (matches(child, attrName, attrValue)) {
+                    report = new Report(Report.RULE_NESTED_KEYWORD, attrValue + " keyword cannot be contained inside another hAtom node of the same level", child);
+                    addReport(report);
                     
                 }
                 // Recursively check for nested occurrences
@@ -168,6 +168,54 @@ public abstract class BaseAnalyzer implements Analyzer {
         }
     }
 
+    /**
+     * Adds a report to the report sink of this analyzer.<br>
+     * @param report the report
+     */
+    protected void addReport(Report report) {
+        getReportSink().addReport(report);
+    }
+    
+    /**
+     * Returns the sink that collects the reports of this analyzer.<br>
+     * When no sink has been set (ie: the analyzer is not used by a <code>ValidatorEngine</code>), the engine
+     * associated with the document name in the <code>ValidatorCache</code> is used.<br>
+     * @return the report sink
+     */
+    public ReportSink getReportSink() {
+        
+        if (reportSink == null) {
+            reportSink = ValidatorCache.getInstance().getEngine(documentName);
+        }
+        
+        return reportSink;
+    }
+    
+    /**
+     * Sets the sink that collects the reports of this analyzer. Analyzers created by this one share the
+     * same sink.<br>
+     * @param reportSink the report sink
+     */
+    public void setReportSink(ReportSink reportSink) {
+        this.reportSink = reportSink;
+    }
+    
+    /**
+     * Returns the timings where the analysis time is recorded, if any.<br>
+     * @return
+     */
+    public ValidationTimings getTimings() {
+        return timings;
+    }
+    
+    /**
+     * Sets the timings where the analysis time is recorded (see <code>ValidationTimings</code>).<br>
+     * @param timings the timings, or null
+     */
+    public void setTimings(ValidationTimings timings) {
+        this.timings = timings;
+    }
+
     /**
      * Returns the name of the document.<br>
      * @return
@@ -178,14 +226,12 @@ public abstract class BaseAnalyzer implements Analyzer {
 
     
     /**
-     * Sets the name of the document. Also retrieves and sets the reference to the engine oject associated
-     * to this document's validation task.<br>
+     * Sets the name of the document.<br>
      *  
      * @param documentName Name of the document 
      */
     public void setDocumentName(String documentName) {
         this.documentName = documentName;
-        this.engine = ValidatorCache.getInstance().getEngine(documentName);
     }
 
     /**
@@ -197,33 +243,33 @@ public abstract class BaseAnalyzer implements Analyzer {
     }
 
     /**
-     * Sets the DOM document for the XHTML file that must be validated.<br>
+     * Sets the DOM document for the XHTML file that must be validated, and retrieves its keyword index.<br>
      * @param the document
      */
     public void setXhtmlDoc(Document xhtmlDoc) {
         this.xhtmlDoc = xhtmlDoc;
+        this.keywordIndex = KeywordIndex.getIndex(xhtmlDoc);
     }
     
     /**
-     * Returns the iterator associated to the XHTML document or to a portion of it.<br>
-     * Note that there is no direct association between this class' Document object and
-     * the Iterator. The iterator <b>may</b> iterate over the entire document or, if needed,
-     * over one of its child nodes (see <code>node</code> variable).<br> 
-     * @return the document's or one of its nodes' iterator
+     * Returns the index of the hAtom keywords used in the document.<br>
+     * @return the keyword index
      */
-    public NodeIterator getNodeIterator() {
-        return nodeIterator;
+    public KeywordIndex getKeywordIndex() {
+        return keywordIndex;
     }
-
+    
     /**
-     * Sets the iterator associated to the XHTML document or to a portion of it.<br>
-     * Note that there is no direct association between this class' Document object and
-     * the Iterator. The iterator <b>may</b> iterate over the entire document or, if needed,
-     * over one of its child nodes (see <code>node</code> variable).<br> 
-     * @param the document's or one of its nodes' iterator
+     * Check whether the given node contains the given hAtom keyword in the given attribute, using
+     * the document's keyword index.<br>
+     * 
+     * @param aNode node to be analyzed
+     * @param attrName the attribute name to be matched
+     * @param keyword the hAtom keyword to be matched
+     * @return <code>true</code> if node contains the keyword, <code>false</code> otherwise
      */
-    private void setNodeIterator(NodeIterator nodeIterator) {
-        this.nodeIterator = nodeIterator;
+    protected boolean matches(Node aNode, String attrName, String keyword) {
+        return keywordIndex.matches(aNode, attrName, keyword);
     }
     
     /**
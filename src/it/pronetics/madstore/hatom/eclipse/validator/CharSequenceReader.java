@@ -0,0 +1,82 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader over a CharSequence.<br>
+ * Characters are read directly from the sequence, which is never copied. The sequence must not be
+ * modified while it is being read.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class CharSequenceReader extends Reader {
+
+    // The characters to be read
+    private CharSequence chars;
+
+    // Position of the next character to be read
+    private int position;
+
+    /**
+     * Creates a new reader over the given characters.<br>
+     * @param chars the characters to be read
+     */
+    public CharSequenceReader(CharSequence chars) {
+        this.chars = chars;
+    }
+
+    /**
+     * Reads characters into a portion of an array.<br>
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if (chars == null) {
+            throw new IOException("Reader has been closed");
+        }
+
+        int count = Math.min(len, chars.length() - position);
+
+        if (count <= 0) {
+            return (len == 0) ? 0 : -1;
+        }
+
+        if (chars instanceof String) {
+            ((String) chars).getChars(position, position + count, cbuf, off);
+        } else {
+            for (int i = 0; i < count; i++) {
+                cbuf[off + i] = chars.charAt(position + i);
+            }
+        }
+
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * Releases the character sequence.<br>
+     */
+    @Override
+    public void close() {
+        chars = null;
+    }
+}
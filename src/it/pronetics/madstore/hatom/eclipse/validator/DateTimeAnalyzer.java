@@ -16,8 +16,6 @@
 
 package it.pronetics.madstore.hatom.eclipse.validator;
 
-import java.io.IOException;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.w3c.dom.Element;
@@ -27,7 +25,7 @@ import org.w3c.dom.Node;
  * Analyzes a node, checking that matches some features of the hAtom keywords that use datetime design pattern
  * (ie: updated or published).<br>
  * @author Andrea Castello
- * @version 1.1
+ * @version 1.5
  */
 public class DateTimeAnalyzer extends HentryChildAnalyzer {
 
@@ -35,8 +33,11 @@ public class DateTimeAnalyzer extends HentryChildAnalyzer {
     // the date value.
     private final static String DATETIME_REGEXP = "^[0-9]{4}-[0-9]{2}-[0-9]{2}.*T[^+\\-]*([1-9]|1[0-2]):[0-5]\\d(:[0-5]\\d(\\.\\d{1,3})?)?[+\\-]?[0-9]{2}:[0-9]{2}";
 
+    // Compiled datetime pattern, shared by all the analyzers
+    private final static Pattern DATETIME_PATTERN = Pattern.compile(DATETIME_REGEXP);
+
     // Name of the HTML tag where datetime pattern is usually found
-    private String DATE_TIME_PATTERN_TAG = "abbr";
+    private final static String DATE_TIME_PATTERN_TAG = "abbr";
 
     /**
      * Creates a new instance of DateTimeAnalyzer.<br>
@@ -58,67 +59,47 @@ public class DateTimeAnalyzer extends HentryChildAnalyzer {
      * Performs validation of an XHTML hAtom microformat that implements the datetime design pattern.<br>
      */
     @Override
-    public void analyze() throws IOException {
-
-        // It's not the node we are looking for, let check if there are some unwanted hAtom attributes/formats
-        if (!XMLUtils.nodeAttributeMatches(getNode(), getAttributeName(), getAttributeValue())) {
-
-            searchInvalidAttributes();
+    public boolean analyzeNode() {
 
-        } else { // Is a valid hAtom node, check if there are nested nodes
-
-            String[] keys = new String[HATOM_HENTRY_ATTRIBUTES.size()];
-            HATOM_HENTRY_ATTRIBUTES.keySet().toArray(keys);
-
-            for (int i = 0; i < keys.length; i++) {
-                checkNestedNode(getNode(), getAttributeName(), keys[i]);
-            }
+        if (!super.analyzeNode()) {
+            return false;
+        }
 
-            Report report;
+        Report report;
 
-            // Check if hAtom value is inside an <abbr> tag
-            if (!isAbbrNode()) {
-                report = new Report(getAttributeValue() + " hAtom keyword must be contained inside an <abbr> tag", getNode());
-                engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                engine.addReport(report);
-            }
+        // Check if hAtom value is inside an <abbr> tag
+        if (!isDateTimeTag(getNode().getNodeName())) {
+            report = new Report(Report.RULE_DATETIME_TAG, getAttributeValue() + " hAtom keyword must be contained inside an <abbr> tag", getNode());
+            addReport(report);
+        }
 
-            // Analyze date and time pattern
-            if (!dateTimeMatches()) {
-                report = new Report(getAttributeValue() + " date does not match pattern YYYY-MM-DDTHH:MM:SS+ZZ:ZZ", getNode());
-                engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                engine.addReport(report);
-            }
+        // Analyze date and time pattern
+        if (!dateTimeMatches(((Element) getNode()).getAttribute(Analyzer.ATTR_NAME_TITLE))) {
+            report = new Report(Report.RULE_DATETIME_PATTERN, getAttributeValue() + " date does not match pattern YYYY-MM-DDTHH:MM:SS+ZZ:ZZ", getNode());
+            addReport(report);
         }
 
+        return true;
     }
 
     /**
-     * Check if the node datetime matches the datetime design pattern for hAtom microformat.<br>
+     * Check if the given datetime matches the datetime design pattern for hAtom microformat.<br>
      * <b>Current implementation validates that datetime format, but not its value.</b><br>
-     * @return
+     * @param dateTime the datetime value (can be null)
+     * @return <code>true</code> if the value matches the pattern, <code>false</code> otherwise
      */
-    private boolean dateTimeMatches() {
-
-        boolean result = false;
-
-        String dateTime = ((Element) getNode()).getAttribute(Analyzer.ATTR_NAME_TITLE);
-        if (dateTime != null) {
-            Pattern p = Pattern.compile(DATETIME_REGEXP);
-            Matcher matcher = p.matcher(dateTime);
-            result = matcher.matches();
-        }
-
-        return result;
+    static boolean dateTimeMatches(String dateTime) {
+        return dateTime != null && DATETIME_PATTERN.matcher(dateTime).matches();
     }
 
     /**
-     * Returns <code>true</code> if teh current node is an <abbr> tag, <code>false</code> otherwise.<br>
+     * Returns <code>true</code> if the given node name is an <abbr> tag, <code>false</code> otherwise.<br>
+     * @param nodeName the node name
      * @return
      */
-    private boolean isAbbrNode() {
+    static boolean isDateTimeTag(String nodeName) {
         // Node name should never be null: in case of non-element node, it should return #text or similar
         // meta-names
-        return getNode().getNodeName().equalsIgnoreCase(DATE_TIME_PATTERN_TAG);
+        return nodeName.equalsIgnoreCase(DATE_TIME_PATTERN_TAG);
     }
 }
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Node;
+
+/**
+ * Path from the document root to an element, as the chain of the element names.<br>
+ * Paths are immutable and every element refers to the path of its parent, so the path of an element is
+ * created once and shared by all the reports of the element and of its descendants. The string form is
+ * only built when it is requested.<br>
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public final class ElementPath {
+
+    // Path of the document node, root of all the paths
+    public static final ElementPath DOCUMENT = new ElementPath("#document", null);
+
+    // Name of the element
+    private final String name;
+
+    // Path of the parent element, null for the document node
+    private final ElementPath parent;
+
+    /**
+     * Creates the path of an element.<br>
+     * @param name the element name
+     * @param parent the path of its parent
+     */
+    public ElementPath(String name, ElementPath parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the path of the given DOM node, made of the node and all its ancestors.<br>
+     * @param node the node (can be null)
+     * @return the path, or null if the node is null
+     */
+    public static ElementPath getPath(Node node) {
+        return (node != null) ? new ElementPath(node.getNodeName(), getPath(node.getParentNode())) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ElementPath getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the names from the root to the element, separated by <code>" > "</code>.<br>
+     */
+    @Override
+    public String toString() {
+
+        List<String> names = new ArrayList<String>();
+        for (ElementPath p = this; p != null; p = p.parent) {
+            names.add(p.name);
+        }
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            buf.append(names.get(i));
+            if (i != 0) {
+                buf.append(" > ");
+            }
+        }
+
+        return buf.toString();
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Source region of an hentry element and the validation reports that belong to it.<br>
+ * Regions are recorded by <code>StreamingValidator</code> for the hentries that are direct members of an
+ * hfeed, and are used by <code>IncrementalValidator</code> to validate again just the edited entries.<br>
+ * <br>
+ * The parser only provides line and column numbers, at the end of the start and end tags of the element:
+ * they are converted into character offsets by <code>resolve</code>.<br>
+ * The entry-key values are kept apart from the other reports, since their uniqueness depends on all the
+ * hentries of the hfeed.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.3
+ */
+public class EntryRegion {
+
+    // Names of the ancestors of the hentry element, from the document element
+    private List<String> ancestors;
+
+    // Parser positions (line, column) at the end of the start tag and at the end of the end tag
+    private int startTagLine;
+    private int startTagColumn;
+    private int endLine;
+    private int endColumn;
+
+    // Offsets of the start tag, of the content (between start and end tags) and of the end of the element
+    private int start;
+    private int contentStart;
+    private int contentEnd;
+    private int end;
+
+    // false when the hentry contains keywords that concern its hfeed (hfeed, feed-key)
+    private boolean local = true;
+
+    // Reports that concern only this hentry
+    private List<Report> reports = new ArrayList<Report>();
+
+    // Entry-key values of the hentry, and the report of each of them
+    private List<String> entryKeyValues = new ArrayList<String>();
+    private List<Report> entryKeyReports = new ArrayList<Report>();
+
+    // Entry-key reports that apply, as decided by checkEntryKeys
+    private List<Report> activeEntryKeyReports = new ArrayList<Report>();
+
+    /**
+     * Creates a new region.<br>
+     * @param ancestors names of the ancestors of the hentry element
+     * @param startTagLine parser line at the end of the start tag
+     * @param startTagColumn parser column at the end of the start tag
+     */
+    EntryRegion(List<String> ancestors, int startTagLine, int startTagColumn) {
+        this.ancestors = ancestors;
+        this.startTagLine = startTagLine;
+        this.startTagColumn = startTagColumn;
+    }
+
+    /**
+     * Sets the parser position at the end of the end tag.<br>
+     */
+    void setEndPosition(int line, int column) {
+        this.endLine = line;
+        this.endColumn = column;
+    }
+
+    /**
+     * Converts the parser positions of the region and of its reports into offsets of the given text.<br>
+     * @param text the parsed text
+     * @param lineOffsets the offsets of the lines of the text
+     * @param shift amount added to all the offsets
+     */
+    void resolve(CharSequence text, int[] lineOffsets, int shift) {
+
+        int startTagEnd = getOffset(lineOffsets, startTagLine, startTagColumn);
+        end = getOffset(lineOffsets, endLine, endColumn);
+
+        start = getTagStart(text, lineOffsets, startTagLine, startTagColumn) + shift;
+        contentStart = startTagEnd + shift;
+        // Elements without end tag (<div/>) end with their start tag
+        contentEnd = (end == startTagEnd) ? contentStart : lastIndexOf(text, '<', end - 1) + shift;
+        end += shift;
+
+        for (Report report : getAllReports()) {
+            report.resolve(text, lineOffsets, shift);
+        }
+    }
+
+    /**
+     * Converts a parser position (line and column, both starting from 1) into a text offset.<br>
+     * @param lineOffsets the offsets of the lines of the text
+     * @param line the line
+     * @param column the column
+     * @return the offset
+     */
+    static int getOffset(int[] lineOffsets, int line, int column) {
+        return lineOffsets[line - 1] + column - 1;
+    }
+
+    /**
+     * Returns the offset of the start tag of an element, given the parser position at the end of the tag.<br>
+     * @param text the parsed text
+     * @param lineOffsets the offsets of the lines of the text
+     * @param line parser line at the end of the start tag
+     * @param column parser column at the end of the start tag
+     * @return the offset
+     */
+    static int getTagStart(CharSequence text, int[] lineOffsets, int line, int column) {
+        // Attribute values cannot contain '<', so the last one is where the tag starts
+        return lastIndexOf(text, '<', getOffset(lineOffsets, line, column) - 1);
+    }
+
+    /**
+     * Returns the index of the last occurrence of the character, at or before the given index.<br>
+     */
+    private static int lastIndexOf(CharSequence text, char c, int fromIndex) {
+
+        int i = fromIndex;
+        while (i >= 0 && text.charAt(i) != c) {
+            i--;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the offsets of the lines of the given text. Line breaks are the ones of the XML parser:
+     * <code>\r\n</code>, <code>\r</code> and <code>\n</code>.<br>
+     * @param text the text
+     * @return the offset of each line, the first line at index 0
+     */
+    static int[] getLineOffsets(CharSequence text) {
+
+        int[] offsets = new int[64];
+        int lines = 1;
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+
+            char c = text.charAt(i);
+
+            if (c == '\r' || c == '\n') {
+
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+
+                if (lines == offsets.length) {
+                    int[] larger = new int[lines * 2];
+                    System.arraycopy(offsets, 0, larger, 0, lines);
+                    offsets = larger;
+                }
+                offsets[lines++] = i + 1;
+            }
+        }
+
+        int[] trimmed = new int[lines];
+        System.arraycopy(offsets, 0, trimmed, 0, lines);
+
+        return trimmed;
+    }
+
+    /**
+     * Moves the region and its reports by the given amount.<br>
+     */
+    void shift(int delta) {
+        start += delta;
+        contentStart += delta;
+        contentEnd += delta;
+        end += delta;
+
+        for (Report report : getAllReports()) {
+            report.shift(delta);
+        }
+    }
+
+    /**
+     * Resizes the region after its content has changed by the given amount.<br>
+     */
+    void resize(int delta) {
+        contentEnd += delta;
+        end += delta;
+    }
+
+    /**
+     * Check whether the given text range is inside the content of the hentry element, tags excluded.<br>
+     * @param offset the range offset
+     * @param length the range length
+     * @return <code>true</code> if the range is in the content, <code>false</code> otherwise
+     */
+    public boolean contentContains(int offset, int length) {
+        // Elements without end tag (<div/>) have no content
+        return end > contentEnd && offset >= contentStart && offset + length <= contentEnd;
+    }
+
+    void setNonLocal() {
+        local = false;
+    }
+
+    /**
+     * Returns <code>true</code> when the hentry can be validated without its hfeed.<br>
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    void addReport(Report report) {
+        reports.add(report);
+    }
+
+    /**
+     * Adds an entry-key of the hentry.<br>
+     * @param value the entry-key value
+     * @param report the report of the entry-key, whose message is set by <code>checkEntryKeys</code>
+     * @param active <code>true</code> if the report applies
+     */
+    void addEntryKey(String value, Report report, boolean active) {
+        entryKeyValues.add(value);
+        entryKeyReports.add(report);
+        if (active) {
+            activeEntryKeyReports.add(report);
+        }
+    }
+
+    /**
+     * Checks that entry-key values are unique inside an hfeed and that they are not empty, with the same
+     * rules of <code>StreamingValidator</code>.<br>
+     * @param regions all the hentry regions of the hfeed, in document order
+     */
+    static void checkEntryKeys(List<EntryRegion> regions) {
+
+        Set<String> values = new HashSet<String>();
+
+        for (EntryRegion region : regions) {
+
+            region.activeEntryKeyReports.clear();
+
+            for (int i = 0; i < region.entryKeyValues.size(); i++) {
+
+                String value = region.entryKeyValues.get(i);
+                Report report = region.entryKeyReports.get(i);
+
+                if (values.contains(value)) {
+                    report.setRule(Report.RULE_DUPLICATE_ENTRY_KEY);
+                    report.setMessage(StreamingValidator.getDuplicateEntryKeyMessage(value));
+                    region.activeEntryKeyReports.add(report);
+                } else if ("".equals(value)) {
+                    report.setRule(Report.RULE_EMPTY_ENTRY_KEY);
+                    report.setMessage(StreamingValidator.getEmptyEntryKeyMessage());
+                    region.activeEntryKeyReports.add(report);
+                } else {
+                    values.add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all the reports of the hentry that apply: the local ones first, then the entry-key ones.<br>
+     * @return the reports
+     */
+    public List<Report> getReports() {
+
+        List<Report> all = new ArrayList<Report>(reports);
+        all.addAll(activeEntryKeyReports);
+
+        return all;
+    }
+
+    /**
+     * Returns the reports recorded for the hentry, including the inactive entry-key ones.<br>
+     */
+    List<Report> getAllReports() {
+
+        List<Report> all = new ArrayList<Report>(reports);
+        all.addAll(entryKeyReports);
+
+        return all;
+    }
+
+    public List<String> getAncestors() {
+        return ancestors;
+    }
+
+    /**
+     * Returns the offset of the start tag of the hentry element.<br>
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset following the end tag of the hentry element.<br>
+     */
+    public int getEnd() {
+        return end;
+    }
+}
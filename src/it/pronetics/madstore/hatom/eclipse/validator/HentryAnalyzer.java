@@ -18,12 +18,22 @@ package it.pronetics.madstore.hatom.eclipse.validator;
 
 import static it.pronetics.madstore.hatom.eclipse.validator.HentryChildAnalyzer.HENTRY_CHILDREN;
 import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_CLASS;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_REL;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -31,9 +41,18 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.traversal.NodeIterator;
 
 /**
- * Performs validation subtask for hentry attributes
+ * Performs validation subtask for hentry attributes<br>
+ * <br>
+ * In parallel mode, the children of large hentry lists are validated by a pool of threads, one thread per
+ * processor: the list is split into contiguous chunks, and each chunk is validated by its own set of
+ * analyzers, which collect their reports in their own <code>ReportBuffer</code>. Buffers are then drained
+ * to the report sink chunk by chunk, so reports are in the same order of a sequential validation. The entry-key uniqueness, which depends on all the
+ * hentries, is always checked sequentially.<br>
+ * Threads only read the document, so it must not be a DOM whose nodes are expanded when they are first read
+ * (ie: a Xerces document with deferred node expansion): the documents of <code>XMLUtils</code> never are.
+ * The threads are created when first needed, and released by <code>shutdown</code>.<br>
  * @author Andrea Castello
- * @version 1.5
+ * @version 1.15
  */
 public class HentryAnalyzer extends BaseAnalyzer {
     
@@ -62,11 +81,33 @@ public class HentryAnalyzer extends BaseAnalyzer {
     	CHECKABLE_KEYWORDS[CHECKABLE_KEYWORDS.length - 1] = HfeedAnalyzer.KEYWORD_HENTRY;
     }
 
+    // Mask of the CHECKABLE_KEYWORDS, see KeywordIndex
+    private static final int CHECKABLE_KEYWORDS_MASK = KeywordIndex.getKeywordMask(CHECKABLE_KEYWORDS);
+
     // All the keywords that MUST appear in a valid hAtom document
     public static final String[] MANDATORY_KEYWORDS = { KEYWORD_ENTRY_KEY, KEYWORD_ENTRY_TITLE, KEYWORD_UPDATED, KEYWORD_AUTHOR }; 
     
+    // Minimum number of hentries validated in parallel: smaller lists are not worth the threads overhead
+    public static final int PARALLEL_THRESHOLD = 64;
+    
+    // Number of chunks validated by each thread, so that threads stay busy when chunks take different times
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    // Number of threads used in parallel mode
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    
+    // Threads used in parallel mode, shared by all the analyzers. Created when first needed.
+    private static ExecutorService executor;
+    
+    // If true, hentry children are validated in parallel
+    private boolean parallel = false;
+    
     // If true, it is both a hfeed AND a hentry node.
     private boolean hfeedHentryNode = false;
+
+    // Analyzers of the hentry children keywords (keys), in HENTRY_CHILDREN order. They are created once per
+    // validation and reused for every node under the hentries.
+    private Map<String, HentryChildAnalyzer> childAnalyzers;
     
     /**
      * Creates a new instance of HentryAnalyzer and fills the VALIDATION_CONFIG_CLASSES map with the association between
@@ -76,9 +117,23 @@ public class HentryAnalyzer extends BaseAnalyzer {
      */
     public HentryAnalyzer(Node node){
         setNode(node);
-        setHfeedHentryNode();
     }
     
+    /**
+     * Returns <code>true</code> if hentry children are validated in parallel.<br>
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Enables or disables the parallel validation of hentry children.<br>
+     * @param parallel <code>true</code> to validate hentry children in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Perform validation of hentry nodes and delegates validation of its child nodes to specific
      * Analyzer subclasses.<br>
@@ -89,6 +144,10 @@ public class HentryAnalyzer extends BaseAnalyzer {
         
         List<Node> hentryNodes;
 
+        setHfeedHentryNode();
+
+        createChildAnalyzers();
+        
         // 1 - The hfeed node can also be an hentry node.
         if (isHfeedHentryNode()) {
              
@@ -100,10 +159,11 @@ public class HentryAnalyzer extends BaseAnalyzer {
             hentryNodes = searchNodes(node, ATTR_CLASS, KEYWORD_HENTRY);
             
             NodeList nodeList = node.getChildNodes();
-            // We search for unmatching nodes under the root node.
+            Set<Node> excludedNodes = new HashSet<Node>(hentryNodes);
+            // We search for unmatching nodes under the root node, skipping the hentry nodes.
             // This finds hentry children placed outside hentry nodes
             for (int i = 0; i < nodeList.getLength(); i++) {
-                ValidatorEngine.analyzeUnmatchingNodes(getXhtmlDoc(), nodeList.item(i), getDocumentName(), CHECKABLE_KEYWORDS);
+                ValidatorEngine.analyzeUnmatchingNodes(nodeList.item(i), excludedNodes, getReportSink(), CHECKABLE_KEYWORDS_MASK);
             }
         }
         
@@ -112,6 +172,10 @@ public class HentryAnalyzer extends BaseAnalyzer {
 
         // Validate children for hentry list
         validateHentriesChildren(hentryNodes);
+        
+        if (getReportSink().isFull()) {
+            return;
+        }
 
         // Checks for duplicate entry-key 
         validateEntryKeyValues(hentryNodes);
@@ -126,9 +190,8 @@ public class HentryAnalyzer extends BaseAnalyzer {
     private void addEntryKeyValue(Node aNode) {
         
         if (!addMappedAttributeValue(Analyzer.ATTR_NAME_TITLE, aNode)){
-            Report report = new Report(KEYWORD_ENTRY_KEY + " cannot have empty value", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_EMPTY_ENTRY_KEY, KEYWORD_ENTRY_KEY + " cannot have empty value", aNode);
+            addReport(report);
         }
         
     }
@@ -146,9 +209,8 @@ public class HentryAnalyzer extends BaseAnalyzer {
         String value = ((Element)aNode).getAttribute(Analyzer.ATTR_NAME_TITLE); 
         
         if (isDuplicateAttributeValue(Analyzer.ATTR_NAME_TITLE, value)){
-            Report report = new Report(KEYWORD_ENTRY_KEY + " value " + value + " is already present in current hentry", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_DUPLICATE_ENTRY_KEY, KEYWORD_ENTRY_KEY + " value " + value + " is already present in current hentry", aNode);
+            addReport(report);
         }
         else { // entry-key is unique, we add it to the entry-key values list.
             addEntryKeyValue(aNode);
@@ -159,70 +221,61 @@ public class HentryAnalyzer extends BaseAnalyzer {
      * Checks that all the mandatory attributes under the hentry node are present.<br>
      * If they are not present an error report is added to the validation report list.<br>
      * @param hentryNode node to be checked
+     * @param keywords mask of the keywords used in the class attribute by the hentry node and by all the
+     * nodes under it (see <code>KeywordIndex</code>)
      */
-    private void checkMandatoryAttributes(Node hentryNode) {
-        
-        NodeIterator iterator = XMLUtils.getNodeIterator(getXhtmlDoc(), hentryNode);
-        
-        String keywordValue = "";
-        
-        Node n;
+    private void checkMandatoryAttributes(Node hentryNode, int keywords) {
         
         for (int i=0; i<MANDATORY_KEYWORDS.length; i++){
             
-            while(( n = iterator.nextNode())!=null){
-            
-                if ( XMLUtils.nodeAttributeMatches(n, ATTR_CLASS, MANDATORY_KEYWORDS[i])){
-                    keywordValue = MANDATORY_KEYWORDS[i];
-                }
-            
-            }
-            
-            // Bring iterator back to first node
-            while (( n = iterator.previousNode())!=null){}
-        
             // No mandatory keyword, has been found
-            if ("".equals(keywordValue)){
-                Report report = new Report("Mandatory entry child keyword "+ MANDATORY_KEYWORDS[i] + " is missing", hentryNode);
-                engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                engine.addReport(report);
-            }
-            else {
-                // mandatory keyword has been found, reset it for the next iteration
-                keywordValue = ""; 
+            if ((keywords & KeywordIndex.getKeywordBit(MANDATORY_KEYWORDS[i])) == 0){
+                Report report = new Report(Report.RULE_MISSING_ENTRY_CHILD, "Mandatory entry child keyword "+ MANDATORY_KEYWORDS[i] + " is missing", hentryNode);
+                addReport(report);
             }
         }
-        
-        iterator.detach();
-       
     }
     
 
     /**
-     * Creates the proper Analyzer implementation for the given attribute/hatom keyword value.
-     * @param item node to be analyzed
+     * Creates the analyzers of the hentry children keywords, one for each keyword, as configured
+     * in VALIDATION_CONFIG_CLASSES.<br>
+     */
+    private void createChildAnalyzers() {
+
+        childAnalyzers = new LinkedHashMap<String, HentryChildAnalyzer>();
+
+        for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
+            childAnalyzers.put(HENTRY_CHILDREN[i], createChildAnalyzer(HATOM_HENTRY_ATTRIBUTES.get(HENTRY_CHILDREN[i]), HENTRY_CHILDREN[i]));
+        }
+    }
+
+    /**
+     * Creates the proper Analyzer implementation for the given attribute/hatom keyword value.<br>
+     * The analyzer has no node: it must be set before each analysis.<br>
      * @param attrName attribute name 
      * @param attrValue attribute value that matches an hAtom keyword
      * @return the correct Analyzer implementation
      */
-    private Analyzer getChildAnalyzer(Node item, String attrName, String attrValue) {
-        
-        String className = "it.pronetics.madstore.hatom.validator." + VALIDATION_CONFIG_CLASSES.get(attrValue); 
+    private HentryChildAnalyzer createChildAnalyzer(String attrName, String attrValue) {
+
+        String analyzerName = VALIDATION_CONFIG_CLASSES.get(attrValue);
         HentryChildAnalyzer analyzer;
-        
-        try {
-            analyzer = (HentryChildAnalyzer) Class.forName(className).newInstance();
-        } catch (Exception ex) {
-            analyzer = new HentryChildAnalyzer(); // we fall back to the basic analyzer
-            ex.printStackTrace();
+
+        if (DATE_TIME_ANALYZER.equals(analyzerName)) {
+            analyzer = new DateTimeAnalyzer();
+        } else if (AUTHOR_ANALYZER.equals(analyzerName)) {
+            analyzer = new AuthorVcardAnalyzer();
+        } else {
+            analyzer = new HentryChildAnalyzer(); // basic analyzer
         }
-        
+
         analyzer.setDocumentName(getDocumentName());
         analyzer.setXhtmlDoc(getXhtmlDoc());
-        analyzer.setNode(item);
+        analyzer.setReportSink(getReportSink());
         analyzer.setAttributeName(attrName);
         analyzer.setAttributeValue(attrValue);
-        
+
         return analyzer;
     }
 
@@ -247,7 +300,7 @@ public class HentryAnalyzer extends BaseAnalyzer {
 
         while ((n = iterator.nextNode()) != null) {
 
-            if (XMLUtils.nodeAttributeMatches(n, ATTR_CLASS, KEYWORD_ENTRY_KEY)) {
+            if (matches(n, ATTR_CLASS, KEYWORD_ENTRY_KEY)) {
 
                 analyzeDuplicateKeyValue(n);
 
@@ -257,9 +310,8 @@ public class HentryAnalyzer extends BaseAnalyzer {
                     keywordValue = KEYWORD_ENTRY_KEY;
                     
                 } else { // There's more than one feed-key for this hfeed, this makes the feed invalid.
-                    Report report = new Report("There's more than one " + KEYWORD_ENTRY_KEY + " in the hentry", aNode);
-                    engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                    engine.addReport(report);
+                    Report report = new Report(Report.RULE_MULTIPLE_ENTRY_KEYS, "There's more than one " + KEYWORD_ENTRY_KEY + " in the hentry", aNode);
+                    addReport(report);
                 }
             }
         }
@@ -283,59 +335,236 @@ public class HentryAnalyzer extends BaseAnalyzer {
     
     /**
      * Performs all the possibile validations (one for each type of hAtom keyword that is under hentry)
-     * on the current piece of document that is under the given node, using a NodeIterator that
-     * starts immediately under the node.<br>
+     * on the given node and on all the nodes under it.<br>
+     * Each node is analyzed only once: instead of searching the subtree of every valid hAtom node for nested
+     * keywords, the number of valid hAtom nodes among the ancestors is passed down the tree, grouped by
+     * attribute name.<br>
      * 
-     * @param node Node corresponding to the hAtom hentry.
-     * @throws java.io.IOException
+     * @param node Node to be validated
+     * @param classMatches number of hAtom keywords matched in the class attribute by the node's ancestors
+     * @param relMatches number of hAtom keywords matched in the rel attribute by the node's ancestors
+     * @return the mask of the keywords used in the class attribute by the node and by all the nodes under it
      */
-    private void validateHentryChildren(Node node) throws IOException {
-          
-        NodeIterator iterator = XMLUtils.getNodeIterator(getXhtmlDoc(), node);
-        Analyzer childAnalyzer;
-        Node n;
+    private int validateHentryChildren(Node node, int classMatches, int relMatches) {
 
-        String[] keys = new String[HATOM_HENTRY_ATTRIBUTES.size()]; 
-        HATOM_HENTRY_ATTRIBUTES.keySet().toArray(keys);
-        
-        while(( n = iterator.nextNode())!=null){
-            
-            for (int j = 0; j < keys.length; j++) {
-                childAnalyzer = getChildAnalyzer(n, HATOM_HENTRY_ATTRIBUTES.get(keys[j]) , keys[j]);
-                childAnalyzer.analyze();
-                
+        int keywords = getKeywordIndex().getMask(node, ATTR_CLASS);
+
+        // Nested nodes: there's one error for each ancestor keyword in the same attribute
+        checkNestedKeywords(node, ATTR_CLASS, classMatches);
+        checkNestedKeywords(node, ATTR_REL, relMatches);
+
+        // Child analyzers are in HENTRY_CHILDREN order, which is the order of the timings
+        ValidationTimings timings = getTimings();
+        int child = 0;
+
+        for (HentryChildAnalyzer childAnalyzer : childAnalyzers.values()) {
+
+            long start = (timings != null) ? System.nanoTime() : 0;
+
+            childAnalyzer.setNode(node);
+
+            if (childAnalyzer.analyzeNode()) {
+                if (ATTR_CLASS.equals(childAnalyzer.getAttributeName())) {
+                    classMatches++;
+                } else {
+                    relMatches++;
+                }
+            }
+
+            if (timings != null) {
+                timings.addChild(child, System.nanoTime() - start);
+            }
+            child++;
+        }
+
+        // Children are reached through their siblings rather than a NodeList, whose cache is shared by the
+        // whole document, since hentries can be validated in parallel
+        for (Node n = node.getFirstChild(); n != null; n = n.getNextSibling()) {
+            // Only elements can have hAtom attributes
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                keywords |= validateHentryChildren(n, classMatches, relMatches);
+            }
+        }
+
+        return keywords;
+    }
+
+    /**
+     * Reports the hentry children keywords used by the node in the given attribute, once for each
+     * ancestor that is a valid hAtom node in the same attribute.<br>
+     * 
+     * @param aNode node to be checked
+     * @param attrName attribute name, class or rel
+     * @param ancestorMatches number of ancestor keywords in the attribute 
+     */
+    private void checkNestedKeywords(Node aNode, String attrName, int ancestorMatches) {
+
+        if (ancestorMatches == 0) {
+            return;
+        }
+
+        for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
+            if (matches(aNode, attrName, HENTRY_CHILDREN[i])) {
+                for (int j = 0; j < ancestorMatches; j++) {
+                    Report report = new Report(Report.RULE_NESTED_KEYWORD, HENTRY_CHILDREN[i] + " keyword cannot be contained inside another hAtom node of the same level", aNode);
+                    addReport(report);
+                }
             }
-            
         }
-        
-        iterator.detach();
     }
     
     
     /**
      * Performs all the possibile validations (one for each type of hAtom keyword that is under hentry)
-     * on each node in the given node list, using <code>validateHentryChildren(Node node)</code>.
-     * <br>
+     * on each node in the given node list, using <code>validateHentryChildren(Node, int, int)</code>, and
+     * checks that the mandatory keywords have been found under each of them.<br>
+     * In parallel mode, large lists are validated by several threads.<br>
      * 
      * @param nodeList
-     * @throws java.io.IOException
+     * @throws IOException in case the parallel validation is interrupted
      */
     private void validateHentriesChildren(List<Node> nodeList) throws IOException {
         
-        for (Node hentryNode : nodeList) {
+        if (isParallel() && nodeList.size() >= PARALLEL_THRESHOLD && THREAD_COUNT > 1) {
+            validateHentriesChildrenInParallel(nodeList);
+        } else {
+            for (Node hentryNode : nodeList) {
+                // Stops as soon as the report limit of the engine has been reached
+                if (getReportSink().isFull()) {
+                    return;
+                }
+                validateHentry(hentryNode);
+            }
+        }
+    }
+    
+    /**
+     * Validates the children of the given hentry and checks that the mandatory keywords have been found
+     * under it.<br>
+     * 
+     * @param hentryNode the hentry node
+     */
+    private void validateHentry(Node hentryNode) {
+        
+        // Keywords used under the hentry, collected while validating its children
+        int keywords = getKeywordIndex().getMask(hentryNode, ATTR_CLASS);
+        
+        for (Node n = hentryNode.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                keywords |= validateHentryChildren(n, 0, 0);
+            }
+        }
+        
+        checkMandatoryAttributes(hentryNode, keywords);
+    }
+    
+    /**
+     * Validates the children of the given hentries with the threads of the executor, and adds their reports
+     * in document order.<br>
+     * The analyzers of each chunk are created by the calling thread, so that the threads only read the
+     * document and its keyword index, which are never modified during validation.<br>
+     * 
+     * @param nodeList the hentry nodes
+     * @throws IOException in case the validation is interrupted
+     */
+    private void validateHentriesChildrenInParallel(final List<Node> nodeList) throws IOException {
+        
+        int chunkCount = Math.min(nodeList.size(), THREAD_COUNT * CHUNKS_PER_THREAD);
+        List<Future<ReportBuffer>> results = new ArrayList<Future<ReportBuffer>>(chunkCount);
+        List<ValidationTimings> chunkTimings = new ArrayList<ValidationTimings>(chunkCount);
+        
+        for (int i = 0; i < chunkCount; i++) {
             
-            checkMandatoryAttributes(hentryNode);
+            final List<Node> chunk = nodeList.subList(i * nodeList.size() / chunkCount, (i + 1) * nodeList.size() / chunkCount);
+            final ReportBuffer buffer = new ReportBuffer();
+            final HentryAnalyzer chunkAnalyzer = createChunkAnalyzer(buffer);
             
-            NodeList nl = hentryNode.getChildNodes();
-            Node n;
-            for(int i=0; i<nl.getLength(); i++){
-                n = nl.item(i);
-                if (n!=null && n.getNodeType()==Node.ELEMENT_NODE){
-                    
-                    validateHentryChildren(n);
-                }
+            // Each chunk has its own timings, so that threads do not contend for them
+            if (getTimings() != null) {
+                chunkAnalyzer.setTimings(new ValidationTimings());
+                chunkTimings.add(chunkAnalyzer.getTimings());
             }
             
+            results.add(getExecutor().submit(new Callable<ReportBuffer>() {
+                public ReportBuffer call() {
+                    for (Node hentryNode : chunk) {
+                        chunkAnalyzer.validateHentry(hentryNode);
+                    }
+                    return buffer;
+                }
+            }));
+        }
+        
+        try {
+            for (Future<ReportBuffer> result : results) {
+                result.get().drainTo(getReportSink());
+            }
+            for (ValidationTimings timings : chunkTimings) {
+                getTimings().add(timings);
+            }
+        } catch (InterruptedException e) {
+            for (Future<ReportBuffer> result : results) {
+                result.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("hentry validation has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException("Unable to validate hentries: " + e.getCause());
+        }
+    }
+    
+    /**
+     * Creates an analyzer, with its own child analyzers, that validates a chunk of the hentries of this
+     * analyzer and collects its reports in the given buffer.<br>
+     * 
+     * @param buffer the buffer of the chunk reports
+     * @return the analyzer
+     */
+    private HentryAnalyzer createChunkAnalyzer(ReportBuffer buffer) {
+        
+        HentryAnalyzer chunkAnalyzer = new HentryAnalyzer(getNode());
+        chunkAnalyzer.setDocumentName(getDocumentName());
+        chunkAnalyzer.setXhtmlDoc(getXhtmlDoc());
+        chunkAnalyzer.setReportSink(buffer);
+        chunkAnalyzer.createChildAnalyzers();
+        
+        return chunkAnalyzer;
+    }
+    
+    /**
+     * Returns the executor of the parallel validations, creating it if needed. Its threads are daemon
+     * threads, so they never keep the application running.<br>
+     */
+    private static synchronized ExecutorService getExecutor() {
+        
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hAtom hentry validator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        return executor;
+    }
+    
+    /**
+     * Releases the threads of the parallel validations (ie: when the plugin is stopped). They are created
+     * again by the next parallel validation.<br>
+     */
+    public static synchronized void shutdown() {
+        
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
         }
     }
   
@@ -351,7 +580,7 @@ public class HentryAnalyzer extends BaseAnalyzer {
      */
     private void setHfeedHentryNode(){
         if (getNode()!=null){
-        	hfeedHentryNode = XMLUtils.nodeAttributeMatches(node, ATTR_CLASS, KEYWORD_HENTRY); 
+        	hfeedHentryNode = matches(node, ATTR_CLASS, KEYWORD_HENTRY); 
         }
     }
 }
@@ -23,7 +23,7 @@ import org.w3c.dom.Node;
 /**
  * Base class for analyzing nodes that are children of an hentry node.<br>
  * @author Andrea Castello
- * @version 1.5
+ * @version 1.8
  */
 public class HentryChildAnalyzer extends BaseAnalyzer {
 
@@ -90,17 +90,38 @@ public class HentryChildAnalyzer extends BaseAnalyzer {
      */
     public void analyze() throws IOException {
 
-        if (!XMLUtils.nodeAttributeMatches(node, attributeName, attributeValue)) {
-
-            searchInvalidAttributes();
-
-        } else { // Is a valid hAtom node, check if there are nested nodes
+        if (analyzeNode()) { // Is a valid hAtom node, check if there are nested nodes
             for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
                 checkNestedNode(node, getAttributeName(), HENTRY_CHILDREN[i]);
             }
         }
     }
 
+    /**
+     * Performs the checks that concern the node alone, without looking for nested hAtom nodes.<br>
+     * If the node is not a valid node for this analyzer's keyword, the keyword must not be used in any of
+     * its attributes.<br>
+     * @return <code>true</code> if the node is a valid hAtom node for this analyzer's keyword, <code>false</code> otherwise
+     */
+    public boolean analyzeNode() {
+
+        // It's not the node we are looking for, let check if there are some unwanted hAtom attributes/formats
+        if (!isValidNode()) {
+            searchInvalidAttributes();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether the node is a valid hAtom node for this analyzer's attribute name and value.<br>
+     * @return <code>true</code> if the node matches, <code>false</code> otherwise
+     */
+    protected boolean isValidNode() {
+        return matches(node, attributeName, attributeValue);
+    }
+
     /**
      * Searches for hAtom keywords that should NOT be in this node.<br>
      * <br>
@@ -128,9 +149,8 @@ public class HentryChildAnalyzer extends BaseAnalyzer {
 
                     if (XMLUtils.attributeValueMatches(attrValue, getAttributeValue())) {
 
-                        report = new Report("hAtom keyword " + getAttributeValue() + " cannot be used in attribute " + attrName, getNode());
-                        engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                        engine.addReport(report);
+                        report = new Report(Report.RULE_INVALID_ATTRIBUTE, "hAtom keyword " + getAttributeValue() + " cannot be used in attribute " + attrName, getNode());
+                        addReport(report);
 
                     }
                 }
@@ -18,6 +18,7 @@ package it.pronetics.madstore.hatom.eclipse.validator;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.w3c.dom.Document;
@@ -35,7 +36,7 @@ import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ALL_
  * Delegates analysis of hfeed child entities to other specific Analyzer implementors.<br>
  * 
  * @author Andrea Castello
- * @version 1.3
+ * @version 1.8
  */
 public class HfeedAnalyzer extends BaseAnalyzer {
     
@@ -55,10 +56,14 @@ public class HfeedAnalyzer extends BaseAnalyzer {
     
     // Constant for FEED-KEY
     public static final String FEED_KEY = "feed-key";
+    // Mask of ALL_KEYWORDS, see KeywordIndex
+    private static final int ALL_KEYWORDS_MASK = KeywordIndex.getKeywordMask(ALL_KEYWORDS);
     // List of feed keys found in the document
     private List<String> feedKeyList;
     // Type of hfeed layout we have in the document
     private int state = STATE_EQUALS_PAGE; // default is page feed
+    // If true, hentry children are validated in parallel (see HentryAnalyzer)
+    private boolean parallel = false;
     
     /**
      * Sets document and creates the NodeIterator for the given XHTML DOM document.<br>
@@ -73,6 +78,14 @@ public class HfeedAnalyzer extends BaseAnalyzer {
         attrValueCache.put(Analyzer.ATTR_NAME_TITLE, feedKeyList);
     }
     
+    /**
+     * Enables or disables the parallel validation of hentry children.<br>
+     * @param parallel <code>true</code> to validate hentry children in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
     public void analyze() throws IOException {
         // 1- Check if hfeed exist
         List<Node> hfeedNodes = searchNodes(getXhtmlDoc(),  ValidatorEngine.ATTR_CLASS, KEYWORD_HFEED);
@@ -99,20 +112,23 @@ public class HfeedAnalyzer extends BaseAnalyzer {
                 // Hfeed is a single one, now we search for the entries under its node
                 analyzeHentries(hfeedNodes.get(0));
                 
-                ValidatorEngine.analyzeUnmatchingNodes(getXhtmlDoc(), getXhtmlDoc(), getDocumentName(), ALL_KEYWORDS);
+                ValidatorEngine.analyzeUnmatchingNodes(getXhtmlDoc(), new HashSet<Node>(hfeedNodes), getReportSink(), ALL_KEYWORDS_MASK);
                 
                 break;
                 
             case STATE_MULTI_FEED:
                 
                 for(Node tempNode: hfeedNodes){
+                    if (getReportSink().isFull()) {
+                        break;
+                    }
                     // Analyze feed keys
                     analyzeFeedKey(tempNode);
                     // Analyze single hentries
                     analyzeHentries(tempNode);
                 }
                 
-                ValidatorEngine.analyzeUnmatchingNodes(getXhtmlDoc(), getXhtmlDoc(), getDocumentName(), ALL_KEYWORDS);
+                ValidatorEngine.analyzeUnmatchingNodes(getXhtmlDoc(), new HashSet<Node>(hfeedNodes), getReportSink(), ALL_KEYWORDS_MASK);
                 break;
         }
         
@@ -128,9 +144,8 @@ public class HfeedAnalyzer extends BaseAnalyzer {
     private void addFeedKeyValue(Node aNode) {
         
         if (!addMappedAttributeValue(Analyzer.ATTR_NAME_TITLE, aNode)){
-            Report report = new Report(FEED_KEY + " cannot have empty value", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_EMPTY_FEED_KEY, FEED_KEY + " cannot have empty value", aNode);
+            addReport(report);
         }
         
     }
@@ -147,9 +162,8 @@ public class HfeedAnalyzer extends BaseAnalyzer {
         String value = ((Element)aNode).getAttribute(Analyzer.ATTR_NAME_TITLE); 
         
         if (isDuplicateAttributeValue(Analyzer.ATTR_NAME_TITLE, value)){
-            Report report = new Report(FEED_KEY + " value " + value + " is already present in the document", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_DUPLICATE_FEED_KEY, FEED_KEY + " value " + value + " is already present in the document", aNode);
+            addReport(report);
         }
     }
 
@@ -171,7 +185,7 @@ public class HfeedAnalyzer extends BaseAnalyzer {
         while ((n = iterator.nextNode()) != null) {
 
 
-            if (XMLUtils.nodeAttributeMatches(n, ValidatorEngine.ATTR_CLASS, FEED_KEY)) {
+            if (matches(n, ValidatorEngine.ATTR_CLASS, FEED_KEY)) {
 
                 // If we have a multi feed document we check for duplicate keys
                 if (state == STATE_MULTI_FEED) {
@@ -188,9 +202,8 @@ public class HfeedAnalyzer extends BaseAnalyzer {
                     keywordValue = FEED_KEY;
                     addFeedKeyValue(n);
                 } else { // There's more than one feed-key for this hfeed, this makes the feed invalid.
-                    Report report = new Report(FEED_KEY + " keyword is already present for this hfeed", n);
-                    engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-                    engine.addReport(report);
+                    Report report = new Report(Report.RULE_MULTIPLE_FEED_KEYS, FEED_KEY + " keyword is already present for this hfeed", n);
+                    addReport(report);
                 }
 
             } else {
@@ -201,9 +214,8 @@ public class HfeedAnalyzer extends BaseAnalyzer {
         
         // No feed-key has been found
         if ("".equals(keywordValue)){
-            Report report = new Report("Mandatory hfeed child keyword "+ FEED_KEY + " is missing", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_MISSING_FEED_KEY, "Mandatory hfeed child keyword "+ FEED_KEY + " is missing", aNode);
+            addReport(report);
         }
         
     }
@@ -220,7 +232,21 @@ public class HfeedAnalyzer extends BaseAnalyzer {
         HentryAnalyzer hentryAnalizer = new HentryAnalyzer(aNode);
         hentryAnalizer.setDocumentName(getDocumentName());
         hentryAnalizer.setXhtmlDoc(getXhtmlDoc());
-        hentryAnalizer.analyze();
+        hentryAnalizer.setReportSink(getReportSink());
+        hentryAnalizer.setParallel(parallel);
+        hentryAnalizer.setTimings(getTimings());
+        
+        if (getTimings() == null) {
+            hentryAnalizer.analyze();
+            return;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            hentryAnalizer.analyze();
+        } finally {
+            getTimings().add(ValidationTimings.HENTRY, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -236,13 +262,12 @@ public class HfeedAnalyzer extends BaseAnalyzer {
      */
     private int checkFeedKeyPosition(int currentPositionState, Node aNode) {
 
-        if (XMLUtils.nodeAttributeMatches(aNode, ValidatorEngine.ATTR_CLASS, KEYWORD_HENTRY) &&
+        if (matches(aNode, ValidatorEngine.ATTR_CLASS, KEYWORD_HENTRY) &&
                 currentPositionState == FEED_KEY_POS_UNDEFINDED) {
 
             currentPositionState = FEED_KEY_POS_AFTER;
-            Report report = new Report(FEED_KEY + " MUST be placed before any hentry", aNode);
-            engine = ValidatorCache.getInstance().getEngine(getDocumentName());
-            engine.addReport(report);
+            Report report = new Report(Report.RULE_FEED_KEY_POSITION, FEED_KEY + " MUST be placed before any hentry", aNode);
+            addReport(report);
 
         }
 
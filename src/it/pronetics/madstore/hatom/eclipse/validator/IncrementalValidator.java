@@ -0,0 +1,382 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Validates a document that is being edited, validating again only the hentries that have changed since
+ * the previous validation.<br>
+ * <br>
+ * After a full validation, the validator knows the region of each hentry contained in an hfeed, and which
+ * reports belong to it. The editor notifies every change of the document with <code>documentChanged</code>:
+ * as long as changes fall inside the content of hentries, only those hentries are parsed and validated again
+ * on the next validation, and their reports replace the previous ones. The entry-key uniqueness is then
+ * checked again on the whole hfeed.<br>
+ * Any other change (markup of an hentry start or end tag, text outside hentries) or an hentry that now
+ * contains hfeed related keywords (hfeed, feed-key) causes a full validation.<br>
+ * <br>
+ * Reports are returned in a fixed order, the same for full and incremental validations: first the reports
+ * that do not belong to any hentry region, then the reports of each hentry region, in document order.
+ * Their offsets are kept up to date with the notified changes, and their lines and columns are set when they
+ * are added to the engine. The engine gets copies of the reports, so the reports of a previous validation,
+ * that may still be read by other threads, never change.<br>
+ * <br>
+ * Validation can run in a background thread while the document is being edited: changes are only queued
+ * by <code>documentChanged</code>, which never waits for a running validation, and they are applied when
+ * the next validation starts. A validation that fails, is canceled, or during which the document changes,
+ * leaves the validator requiring a full validation.<br>
+ * <br>
+ * Each call of <code>validate</code> is recorded by the <code>ValidationMetrics</code> as a single validation,
+ * however many hentry regions it parses.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.5
+ */
+public class IncrementalValidator {
+
+    // Reports that do not belong to any hentry region, in document order
+    private List<Report> otherReports;
+
+    // Hentry regions, grouped by hfeed
+    private List<List<EntryRegion>> feedRegions;
+
+    // Edited regions, that must be validated again
+    private List<EntryRegion> dirtyRegions = new ArrayList<EntryRegion>();
+
+    // Offset of the document element, the text before it is the prolog of every hentry fragment
+    private int prologLength;
+
+    // true when the next validation must be a full one
+    private boolean fullRequired = true;
+
+    // Lock of the changes notified since the last validation started
+    private final Object changesLock = new Object();
+
+    // Changes notified since the last validation started (offset, length, new text length)
+    private List<int[]> pendingChanges = new ArrayList<int[]>();
+
+    // true if invalidate has been called since the last validation started
+    private boolean invalidated;
+
+    // Number of changes notified so far, used to find changes made while a validation is running
+    private int changeCount;
+
+    /**
+     * Creates a new validator. The first validation is always a full one.<br>
+     */
+    public IncrementalValidator() {
+    }
+
+    /**
+     * Notifies a change of the document. The change is applied when the next validation starts.<br>
+     * @param offset offset of the replaced text
+     * @param length length of the replaced text
+     * @param textLength length of the new text
+     */
+    public void documentChanged(int offset, int length, int textLength) {
+        synchronized (changesLock) {
+            pendingChanges.add(new int[] { offset, length, textLength });
+            changeCount++;
+        }
+    }
+
+    /**
+     * Forces a full validation the next time.<br>
+     */
+    public void invalidate() {
+        synchronized (changesLock) {
+            invalidated = true;
+            changeCount++;
+        }
+    }
+
+    /**
+     * Validates the document, adding the reports to the given engine.<br>
+     * The validation stops as soon as the monitor of the engine cancels it.<br>
+     * @param engine the engine that collects the reports
+     * @param text the whole document, with all the changes notified so far
+     * @throws IOException in case the document cannot be parsed, or the validation has been canceled
+     */
+    public synchronized void validate(ValidatorEngine engine, CharSequence text) throws IOException {
+
+        int count = applyPendingChanges();
+        boolean completed = false;
+        long start = System.nanoTime();
+        int first = engine.getReports().size();
+
+        try {
+
+            if (fullRequired || !validateDirtyRegions(engine, text)) {
+                validateAll(engine, text);
+            }
+
+            addReports(engine, text);
+
+            completed = true;
+
+        } finally {
+            if (!completed) {
+                ValidationMetrics.getInstance().recordFailure();
+            }
+            synchronized (changesLock) {
+                // Regions are not reliable if the text has changed while it was being read
+                if (!completed || changeCount != count) {
+                    reset();
+                }
+            }
+        }
+
+        engine.recordValidation(start, first);
+    }
+
+    /**
+     * Adds copies of the reports of the whole document to the engine, setting their lines and columns:
+     * offsets are kept up to date by the changes, lines and columns are computed from them.<br>
+     */
+    private void addReports(ValidatorEngine engine, CharSequence text) {
+
+        List<Report> reports = new ArrayList<Report>(otherReports);
+
+        for (List<EntryRegion> regions : feedRegions) {
+            for (EntryRegion region : regions) {
+                reports.addAll(region.getReports());
+            }
+        }
+
+        if (reports.isEmpty()) {
+            return;
+        }
+
+        int[] lineOffsets = EntryRegion.getLineOffsets(text);
+
+        for (Report report : reports) {
+            // The kept report is shifted by the next changes, the engine's one stays as it is
+            Report copy = report.copy();
+            copy.resolveLine(lineOffsets);
+            engine.addReport(copy);
+        }
+    }
+
+    /**
+     * Applies the changes notified since the last validation started.<br>
+     * @return the number of changes notified so far
+     */
+    private int applyPendingChanges() {
+
+        synchronized (changesLock) {
+
+            if (invalidated) {
+                reset();
+                invalidated = false;
+            }
+
+            for (int[] change : pendingChanges) {
+                applyChange(change[0], change[1], change[2]);
+            }
+            pendingChanges.clear();
+
+            return changeCount;
+        }
+    }
+
+    /**
+     * Updates the regions and the report offsets after a change of the document.<br>
+     */
+    private void applyChange(int offset, int length, int textLength) {
+
+        if (fullRequired) {
+            return;
+        }
+
+        EntryRegion changed = null;
+
+        for (List<EntryRegion> regions : feedRegions) {
+            for (EntryRegion region : regions) {
+                if (region.contentContains(offset, length)) {
+                    changed = region;
+                }
+            }
+        }
+
+        // Changes outside hentries, or in hentries whose reports depend on their hfeed
+        if (changed == null || !changed.isLocal()) {
+            reset();
+            return;
+        }
+
+        int delta = textLength - length;
+
+        if (delta != 0) {
+            for (List<EntryRegion> regions : feedRegions) {
+                for (EntryRegion region : regions) {
+                    if (region.getStart() >= changed.getEnd()) {
+                        region.shift(delta);
+                    }
+                }
+            }
+            for (Report report : otherReports) {
+                if (report.getOffset() >= changed.getEnd()) {
+                    report.shift(delta);
+                }
+            }
+            changed.resize(delta);
+        }
+
+        if (!dirtyRegions.contains(changed)) {
+            dirtyRegions.add(changed);
+        }
+    }
+
+    /**
+     * Discards the regions, so that the next validation is a full one.<br>
+     */
+    private void reset() {
+        fullRequired = true;
+        otherReports = null;
+        feedRegions = null;
+        dirtyRegions.clear();
+    }
+
+    /**
+     * Creates the engine of a single parse, that stops when the given engine is canceled and records its
+     * timings in the ones of the given engine.<br>
+     */
+    private static ValidatorEngine createScratchEngine(ValidatorEngine engine) {
+
+        ValidatorEngine scratch = new ValidatorEngine();
+        scratch.setMonitor(engine.getMonitor());
+        scratch.setTimings(engine.getTimings());
+
+        return scratch;
+    }
+
+    /**
+     * Validates the whole document and records its hentry regions.<br>
+     */
+    private void validateAll(ValidatorEngine engine, CharSequence text) throws IOException {
+
+        reset();
+
+        ValidatorEngine scratch = createScratchEngine(engine);
+        StreamingValidator validator = new StreamingValidator(scratch, true);
+        scratch.parse(new InputSource(new CharSequenceReader(text)), validator);
+
+        int[] lineOffsets = EntryRegion.getLineOffsets(text);
+        Map<Report, Report> regionReports = new IdentityHashMap<Report, Report>();
+
+        for (List<EntryRegion> regions : validator.getFeedRegions()) {
+            for (EntryRegion region : regions) {
+                region.resolve(text, lineOffsets, 0);
+                for (Report report : region.getAllReports()) {
+                    regionReports.put(report, report);
+                }
+            }
+            EntryRegion.checkEntryKeys(regions);
+        }
+
+        otherReports = new ArrayList<Report>();
+        for (Report report : scratch.getReports()) {
+            if (!regionReports.containsKey(report)) {
+                report.resolve(text, lineOffsets, 0);
+                otherReports.add(report);
+            }
+        }
+
+        feedRegions = validator.getFeedRegions();
+        prologLength = EntryRegion.getTagStart(text, lineOffsets, validator.getDocumentElementLine(), validator.getDocumentElementColumn());
+        fullRequired = false;
+    }
+
+    /**
+     * Validates again the edited hentry regions.<br>
+     * @return <code>false</code> if a full validation is needed
+     * @throws IOException if the validation has been canceled
+     */
+    private boolean validateDirtyRegions(ValidatorEngine engine, CharSequence text) throws IOException {
+
+        for (EntryRegion dirty : dirtyRegions) {
+
+            EntryRegion region = validateRegion(engine, text, dirty);
+
+            if (region == null) {
+                return false;
+            }
+
+            for (List<EntryRegion> regions : feedRegions) {
+                int index = regions.indexOf(dirty);
+                if (index >= 0) {
+                    regions.set(index, region);
+                    EntryRegion.checkEntryKeys(regions);
+                }
+            }
+        }
+
+        dirtyRegions.clear();
+
+        return true;
+    }
+
+    /**
+     * Validates a single hentry, parsing it together with the document prolog, so that entities declared in
+     * the DTD are still resolved.<br>
+     * @return the new region of the hentry, or null if the hentry cannot be validated alone
+     * @throws IOException if the validation has been canceled
+     */
+    private EntryRegion validateRegion(ValidatorEngine engine, CharSequence text, EntryRegion dirty) throws IOException {
+
+        StringBuffer fragment = new StringBuffer(prologLength + dirty.getEnd() - dirty.getStart());
+        fragment.append(text.subSequence(0, prologLength));
+        fragment.append(text.subSequence(dirty.getStart(), dirty.getEnd()));
+
+        ValidatorEngine scratch = createScratchEngine(engine);
+        StreamingValidator validator = new StreamingValidator(scratch, true);
+        validator.setFragmentAncestors(dirty.getAncestors());
+
+        try {
+            scratch.parse(new InputSource(new CharSequenceReader(fragment)), validator);
+        } catch (IOException e) {
+            if (scratch.isCanceled()) {
+                throw e;
+            }
+            return null; // the full validation will report the error
+        }
+
+        List<List<EntryRegion>> fragmentRegions = validator.getFeedRegions();
+
+        if (fragmentRegions.size() != 1 || fragmentRegions.get(0).size() != 1) {
+            return null;
+        }
+
+        EntryRegion region = fragmentRegions.get(0).get(0);
+        region.resolve(fragment, EntryRegion.getLineOffsets(fragment), dirty.getStart() - prologLength);
+
+        // The fragment must be exactly one hentry, whose reports all concern the hentry itself
+        if (!region.isLocal() || region.getStart() != dirty.getStart() || region.getEnd() != dirty.getEnd()
+                || scratch.getReports().size() != region.getReports().size()) {
+            return null;
+        }
+
+        return region;
+    }
+}
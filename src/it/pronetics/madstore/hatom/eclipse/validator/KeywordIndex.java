@@ -0,0 +1,270 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ALL_KEYWORDS;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_CLASS;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_REL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * Index of the hAtom keywords used in the <code>class</code> and <code>rel</code> attributes of the
+ * elements of a DOM document.<br>
+ * For each element, the keywords found in those attributes are stored as a bitmask; for each keyword,
+ * the list of elements using it is stored in document order.<br>
+ * The index is built with a single walk of the document, the first time it is requested, and it is
+ * stored inside the document itself so all the analyzers working on the same document share it.
+ * Since validation never modifies the document, the index stays valid as long as the document does.<br>
+ * <br>
+ * Keywords are matched with the same rules of <code>XMLUtils.attributeValueMatches</code>: a keyword
+ * matches if it is the whole attribute value (case insensitive), or its first or last space separated
+ * token.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.2
+ */
+public class KeywordIndex {
+
+    // Key used to store the index inside the document
+    private static final String USER_DATA_KEY = "it.pronetics.madstore.hatom.eclipse.validator.KeywordIndex";
+
+    // hCard property required inside author nodes
+    public static final String KEYWORD_FN = "fn";
+
+    // Indexed keywords: the hAtom keywords plus the fn hCard property
+    public static final String[] INDEXED_KEYWORDS;
+
+    static {
+        INDEXED_KEYWORDS = new String[ALL_KEYWORDS.length + 1];
+        System.arraycopy(ALL_KEYWORDS, 0, INDEXED_KEYWORDS, 0, ALL_KEYWORDS.length);
+        INDEXED_KEYWORDS[INDEXED_KEYWORDS.length - 1] = KEYWORD_FN;
+    }
+
+    // Keyword bits, keyed by keyword
+    private static final Map<String, Integer> KEYWORD_BITS = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < INDEXED_KEYWORDS.length; i++) {
+            KEYWORD_BITS.put(INDEXED_KEYWORDS[i], 1 << i);
+        }
+    }
+
+    // Keyword masks of the class and rel attributes, keyed by element. Elements without keywords are
+    // not stored.
+    private Map<Node, int[]> masks;
+
+    // Elements using each keyword in their class and rel attribute, same order as INDEXED_KEYWORDS
+    private List<List<Node>> classNodes;
+    private List<List<Node>> relNodes;
+
+    /**
+     * Creates the index for the given document.<br>
+     * @param doc the document
+     */
+    private KeywordIndex(Document doc) {
+
+        masks = new IdentityHashMap<Node, int[]>();
+        classNodes = new ArrayList<List<Node>>();
+        relNodes = new ArrayList<List<Node>>();
+
+        for (int i = 0; i < INDEXED_KEYWORDS.length; i++) {
+            classNodes.add(new ArrayList<Node>());
+            relNodes.add(new ArrayList<Node>());
+        }
+
+        NodeIterator iterator = ((DocumentTraversal) doc).createNodeIterator(doc, NodeFilter.SHOW_ELEMENT, null, true);
+        Node n;
+
+        while ((n = iterator.nextNode()) != null) {
+
+            int classMask = getKeywordMask(((Element) n).getAttribute(ATTR_CLASS));
+            int relMask = getKeywordMask(((Element) n).getAttribute(ATTR_REL));
+
+            if (classMask != 0 || relMask != 0) {
+                masks.put(n, new int[] { classMask, relMask });
+                addNode(classNodes, classMask, n);
+                addNode(relNodes, relMask, n);
+            }
+        }
+
+        iterator.detach();
+    }
+
+    /**
+     * Adds the node to the lists of the keywords in the mask.<br>
+     */
+    private static void addNode(List<List<Node>> lists, int mask, Node n) {
+        for (int i = 0; mask != 0; i++, mask >>>= 1) {
+            if ((mask & 1) != 0) {
+                lists.get(i).add(n);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the given document, creating it if the document has none.<br>
+     * @param doc the document
+     * @return the document's index
+     */
+    public static synchronized KeywordIndex getIndex(Document doc) {
+
+        KeywordIndex index = (KeywordIndex) doc.getUserData(USER_DATA_KEY);
+
+        if (index == null) {
+            index = new KeywordIndex(doc);
+            doc.setUserData(USER_DATA_KEY, index, null);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the bit associated with the given keyword, or 0 if the keyword is not indexed.<br>
+     * @param keyword the keyword
+     * @return the keyword's bit
+     */
+    public static int getKeywordBit(String keyword) {
+        Integer bit = KEYWORD_BITS.get(keyword);
+        return (bit != null) ? bit.intValue() : 0;
+    }
+
+    /**
+     * Returns the mask of the given keywords. Non indexed keywords are ignored.<br>
+     * @param keywords the keywords
+     * @return the keywords mask
+     */
+    public static int getKeywordMask(String[] keywords) {
+
+        int mask = 0;
+
+        for (int i = 0; i < keywords.length; i++) {
+            mask |= getKeywordBit(keywords[i]);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Returns the mask of the indexed keywords matched by the given attribute value.<br>
+     * The value is tokenized only once, whatever the number of keywords.<br>
+     * @param value the attribute value (can be null)
+     * @return the keyword mask
+     * @see XMLUtils#attributeValueMatches(String, String)
+     */
+    public static int getKeywordMask(String value) {
+
+        int mask = 0;
+
+        if (value != null && value.length() > 0) {
+
+            int first = value.indexOf(' ');
+
+            if (first < 0) {
+                // Single value, case insensitive match
+                mask = getKeywordBit(foldCase(value));
+            } else {
+                // Composite value (ie: hfeed hentry), only first and last values are matched
+                mask = getKeywordBit(value.substring(0, first)) | getKeywordBit(value.substring(value.lastIndexOf(' ') + 1));
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Converts the value to lower case, so that it is equal to a (lower case) keyword only when
+     * <code>String.equalsIgnoreCase</code> would be true.<br>
+     */
+    private static String foldCase(String value) {
+
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Returns the mask of the keywords used by the node in the given attribute.<br>
+     * @param node the node
+     * @param attrName the attribute name, class or rel
+     * @return the keyword mask, 0 if node has no indexed keywords
+     */
+    public int getMask(Node node, String attrName) {
+
+        int[] nodeMasks = masks.get(node);
+
+        if (nodeMasks == null) {
+            return 0;
+        }
+
+        return ATTR_REL.equals(attrName) ? nodeMasks[1] : nodeMasks[0];
+    }
+
+    /**
+     * Check whether the given node contains the hAtom keyword in the given attribute.<br>
+     * Non indexed keywords or attributes are checked on the node itself.<br>
+     * @param node node to be analyzed
+     * @param attrName the attribute name to be matched
+     * @param keyword the keyword to be matched
+     * @return <code>true</code> if node contains the keyword, <code>false</code> otherwise
+     * @see XMLUtils#nodeAttributeMatches(Node, String, String)
+     */
+    public boolean matches(Node node, String attrName, String keyword) {
+
+        int bit = getKeywordBit(keyword);
+
+        if (bit == 0 || !(ATTR_CLASS.equals(attrName) || ATTR_REL.equals(attrName))) {
+            return XMLUtils.nodeAttributeMatches(node, attrName, keyword);
+        }
+
+        return (getMask(node, attrName) & bit) != 0;
+    }
+
+    /**
+     * Returns all the elements of the document that match the given attribute name and hAtom keyword,
+     * in document order.<br>
+     * @param attrName the attribute name, class or rel
+     * @param keyword the hAtom keyword
+     * @return the (possibly empty) unmodifiable list of matching elements
+     */
+    public List<Node> getNodes(String attrName, String keyword) {
+
+        int bit = getKeywordBit(keyword);
+        List<List<Node>> lists = ATTR_REL.equals(attrName) ? relNodes : classNodes;
+
+        if (bit == 0) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(lists.get(Integer.numberOfTrailingZeros(bit)));
+    }
+}
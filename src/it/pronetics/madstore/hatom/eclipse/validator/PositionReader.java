@@ -0,0 +1,254 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that records, while the parser reads the document, what is needed to turn the parser locations
+ * into document offsets: the offsets of the lines and of the recent <code>'&lt;'</code> characters.<br>
+ * The positions are recorded during the parse, so no second pass over the document is needed. Only the
+ * <code>'&lt;'</code> characters read ahead by the parser are kept: a start tag must be resolved (see
+ * <code>getTagStart</code>) before the following ones, which is the order of the SAX events.<br>
+ * Line breaks are the ones of the XML parser: <code>\r\n</code>, <code>\r</code> and <code>\n</code>.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class PositionReader extends FilterReader {
+
+    // Offsets of the lines read so far
+    private int[] lineOffsets = new int[64];
+    private int lineCount = 1;
+
+    // Offsets of the '<' read after the last resolved tag start, in ascending order from tagHead to tagTail
+    private int[] tagOffsets = new int[64];
+    private int tagHead;
+    private int tagTail;
+
+    // Offset of the next character
+    private int offset;
+
+    // true if the last character read is '\r'
+    private boolean lastCR;
+
+    /**
+     * Creates a new reader that records the positions of the characters read from the given one.<br>
+     * @param in the document
+     */
+    public PositionReader(Reader in) {
+        super(in);
+    }
+
+    /**
+     * Reads a single character.<br>
+     */
+    @Override
+    public int read() throws IOException {
+
+        int c = in.read();
+
+        if (c >= 0) {
+            record((char) c);
+        }
+
+        return c;
+    }
+
+    /**
+     * Reads characters into a portion of an array.<br>
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        int count = in.read(cbuf, off, len);
+
+        for (int i = 0; i < count; i++) {
+            record(cbuf[off + i]);
+        }
+
+        return count;
+    }
+
+    /**
+     * Skips characters, recording them as if they had been read.<br>
+     */
+    @Override
+    public long skip(long n) throws IOException {
+
+        char[] buffer = new char[(int) Math.min(n, 1024)];
+        long skipped = 0;
+
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Marks are not supported, since characters would be recorded twice.<br>
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Records the position of the next character.<br>
+     */
+    private void record(char c) {
+
+        if (c == '\n' && lastCR) {
+            // The line started after '\r' actually starts after "\r\n"
+            lineOffsets[lineCount - 1] = offset + 1;
+        } else if (c == '\r' || c == '\n') {
+            if (lineCount == lineOffsets.length) {
+                int[] larger = new int[lineCount * 2];
+                System.arraycopy(lineOffsets, 0, larger, 0, lineCount);
+                lineOffsets = larger;
+            }
+            lineOffsets[lineCount++] = offset + 1;
+        } else if (c == '<') {
+            addTagOffset(offset);
+        }
+
+        lastCR = (c == '\r');
+        offset++;
+    }
+
+    /**
+     * Appends the offset of a '&lt;' character, reusing the space of the resolved ones.<br>
+     */
+    private void addTagOffset(int tagOffset) {
+
+        if (tagTail == tagOffsets.length) {
+
+            int count = tagTail - tagHead;
+            int[] target = (count * 2 > tagOffsets.length) ? new int[tagOffsets.length * 2] : tagOffsets;
+
+            System.arraycopy(tagOffsets, tagHead, target, 0, count);
+            tagOffsets = target;
+            tagHead = 0;
+            tagTail = count;
+        }
+
+        tagOffsets[tagTail++] = tagOffset;
+    }
+
+    /**
+     * Returns the offset of the given parser location.<br>
+     * @param line parser line (1 based)
+     * @param column parser column (1 based)
+     * @return the offset
+     */
+    public int getOffset(int line, int column) {
+        return lineOffsets[line - 1] + column - 1;
+    }
+
+    /**
+     * Returns the offset of the start tag of an element, given the parser location at the end of the tag,
+     * and forgets the '&lt;' characters read before it.<br>
+     * @param line parser line at the end of the start tag
+     * @param column parser column at the end of the start tag
+     * @return the offset, or -1 if it's unknown
+     */
+    public int getTagStart(int line, int column) {
+
+        int tagEnd = getOffset(line, column);
+
+        // Attribute values cannot contain '<', so the last one before the end is where the tag starts
+        int low = tagHead;
+        int high = tagTail - 1;
+        int found = -1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (tagOffsets[middle] < tagEnd) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        if (found < 0) {
+            return -1;
+        }
+
+        tagHead = found + 1;
+        return tagOffsets[found];
+    }
+
+    /**
+     * Returns the line (1 based) of the given offset.<br>
+     * @param offset an offset of the characters read so far
+     * @return the line
+     */
+    public int getLine(int offset) {
+        return getLine(lineOffsets, lineCount, offset);
+    }
+
+    /**
+     * Returns the column (1 based) of the given offset.<br>
+     * @param offset an offset of the characters read so far
+     * @return the column
+     */
+    public int getColumn(int offset) {
+        return offset - lineOffsets[getLine(offset) - 1] + 1;
+    }
+
+    /**
+     * Returns the line (1 based) of the given offset.<br>
+     * @param lineOffsets the offsets of the lines, in ascending order
+     * @param lineCount the number of lines
+     * @param offset the offset
+     * @return the line
+     */
+    static int getLine(int[] lineOffsets, int lineCount, int offset) {
+
+        int low = 0;
+        int high = lineCount - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineOffsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low + 1;
+    }
+}
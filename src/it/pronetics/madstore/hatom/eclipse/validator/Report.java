@@ -16,8 +16,9 @@
 
 package it.pronetics.madstore.hatom.eclipse.validator;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.NamedNodeMap;
@@ -26,11 +27,52 @@ import org.w3c.dom.Node;
 /**
  * Contains info about a validation error, including the node where it is occurred, an error message and
  * complete node path.<br>
+ * <br>
+ * A report does not keep the node itself, so the DOM object can be released as soon as the validation is
+ * over: it keeps the element name, the attribute names and values, and the path from the root as a chain
+ * of names shared by all the reports of the same element and of its descendants. Element names are the
+ * ones of the parser, which already shares equal names. The path and the string representation of the
+ * element are built only when <code>asString</code> (or <code>getNodePath</code>) is called.<br>
+ * <br>
+ * Reports of the elements found while streaming a character document also know where the element start tag
+ * is: its offset and length, and the line and column where it begins (see <code>PositionReader</code>).<br>
+ * <br>
+ * When the engine merges duplicates, a report stands for all the identical reports (same message and same
+ * element name and attributes) found in the document, whose number is given by <code>getOccurrences</code>.<br>
+ * <br>
+ * A report added to an engine can be read by other threads (ie: the editor view and the marker job), so it
+ * must not be modified afterwards: who keeps reports across validations adds copies (see <code>copy</code>).<br>
+ * <br>
+ * Each report knows the rule that emitted it (see the <code>RULE_</code> constants), so that reports can be
+ * counted by rule without depending on their messages.<br>
  * @author Andrea Castello
- * @version 1.3
+ * @version 1.11
  */
 public class Report {
 
+    // Rules that emit reports, see getRule
+    public static final String RULE_INVALID_POSITION = "invalid-position";
+    public static final String RULE_NESTED_KEYWORD = "nested-keyword";
+    public static final String RULE_MISSING_FEED_KEY = "missing-feed-key";
+    public static final String RULE_MISSING_ENTRY_CHILD = "missing-entry-child";
+    public static final String RULE_FEED_KEY_POSITION = "feed-key-position";
+    public static final String RULE_DUPLICATE_FEED_KEY = "duplicate-feed-key";
+    public static final String RULE_EMPTY_FEED_KEY = "empty-feed-key";
+    public static final String RULE_MULTIPLE_FEED_KEYS = "multiple-feed-keys";
+    public static final String RULE_DUPLICATE_ENTRY_KEY = "duplicate-entry-key";
+    public static final String RULE_EMPTY_ENTRY_KEY = "empty-entry-key";
+    public static final String RULE_MULTIPLE_ENTRY_KEYS = "multiple-entry-keys";
+    public static final String RULE_AUTHOR_HCARD = "author-hcard";
+    public static final String RULE_DATETIME_TAG = "datetime-tag";
+    public static final String RULE_DATETIME_PATTERN = "datetime-pattern";
+    public static final String RULE_INVALID_ATTRIBUTE = "invalid-attribute";
+
+    // Rule of the reports that are not emitted by a validation rule (ie: parse errors)
+    public static final String RULE_OTHER = "other";
+
+    // Attribute arrays of the elements without attributes
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
     /**
      * Creates a new empty instance fo Report.<br>
      */
@@ -39,30 +81,140 @@ public class Report {
 
     /**
      * Creates a report for the given node and with the given message.<br>
+     * The node path is not recorded: use <code>setNode</code> for that.<br>
      * @param message
      * @param node
      */
     public Report(String message, Node node) {
         this.message = message;
-        this.node = node;
+        setElement(node);
     }
 
-    // Node that has been analyzed
-    private Node node;
+    /**
+     * Creates a report of the given rule, for the given node and with the given message.<br>
+     * The node path is not recorded: use <code>setNode</code> for that.<br>
+     * @param rule the rule that emits the report, one of the <code>RULE_</code> constants
+     * @param message the error message
+     * @param node the node
+     */
+    public Report(String rule, String message, Node node) {
+        this(message, node);
+        this.rule = rule;
+    }
+
+    /**
+     * Creates a report for an element that is not backed by a DOM node (ie: it has been found while
+     * streaming the document).<br>
+     * The attribute arrays are not copied, so they must not be modified afterwards.<br>
+     * @param rule the rule that emits the report, one of the <code>RULE_</code> constants
+     * @param message the error message
+     * @param path path from root to the element, whose last name is the element name
+     * @param attrNames the element attribute names, in document order
+     * @param attrValues the element attribute values
+     */
+    public Report(String rule, String message, ElementPath path, String[] attrNames, String[] attrValues) {
+        this.rule = rule;
+        this.message = message;
+        this.path = path;
+        this.nodeName = path.getName();
+        this.attrNames = attrNames;
+        this.attrValues = attrValues;
+    }
+
+    // Name of the element, null when the report does not concern an element
+    private String nodeName;
+
+    // Attribute names and values of the element, in document order
+    private String[] attrNames = NO_ATTRIBUTES;
+    private String[] attrValues = NO_ATTRIBUTES;
 
     // Report Message
     private String message = "";
 
-    // Path from root to node
-    private String nodePath = "";
+    // Rule that emitted the report
+    private String rule = RULE_OTHER;
+
+    // Path from root to node, null if it is not known
+    private ElementPath path;
+
+    // Parser position (line, column) at the end of the element start tag, 0 if unknown
+    private int parserLine;
+    private int parserColumn;
+
+    // Offset and length of the element start tag in the document, offset is -1 if unknown
+    private int offset = -1;
+    private int length;
+
+    // Line and column (1 based) where the element start tag begins, 0 if unknown
+    private int line;
+    private int column;
 
-    public Node getNode() {
-        return node;
+    // Number of identical reports this report stands for
+    private int occurrences = 1;
+
+    /**
+     * Creates a copy of the given report.<br>
+     */
+    private Report(Report report) {
+        this.nodeName = report.nodeName;
+        this.attrNames = report.attrNames;
+        this.attrValues = report.attrValues;
+        this.message = report.message;
+        this.rule = report.rule;
+        this.path = report.path;
+        this.parserLine = report.parserLine;
+        this.parserColumn = report.parserColumn;
+        this.offset = report.offset;
+        this.length = report.length;
+        this.line = report.line;
+        this.column = report.column;
+        this.occurrences = report.occurrences;
+    }
+
+    /**
+     * Returns a copy of this report, that can be modified without changing this one.<br>
+     */
+    Report copy() {
+        return new Report(this);
     }
 
+    /**
+     * Sets the node the report refers to, recording its name, attributes and path.<br>
+     * @param node the node
+     */
     public void setNode(Node node) {
-        this.node = node;
-        extractPath();
+        setElement(node);
+        this.path = ElementPath.getPath(node);
+    }
+
+    /**
+     * Records name and attributes of the given node.<br>
+     */
+    private void setElement(Node node) {
+
+        if (node == null) {
+            return;
+        }
+
+        nodeName = node.getNodeName();
+
+        NamedNodeMap attrMap = node.getAttributes();
+
+        if (attrMap != null) {
+
+            attrNames = new String[attrMap.getLength()];
+            attrValues = new String[attrMap.getLength()];
+
+            for (int i = 0; i < attrNames.length; i++) {
+                Attr attr = (Attr) attrMap.item(i);
+                attrNames[i] = attr.getName();
+                attrValues[i] = attr.getValue();
+            }
+        }
+    }
+
+    public String getNodeName() {
+        return nodeName;
     }
 
     public String getMessage() {
@@ -73,60 +225,153 @@ public class Report {
         this.message = message;
     }
 
+    /**
+     * Returns the rule that emitted the report, one of the <code>RULE_</code> constants.<br>
+     */
+    public String getRule() {
+        return rule;
+    }
+
+    public void setRule(String rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the path from root to node (ie: <code>#document &gt; html &gt; body</code>), or an empty
+     * string if it's unknown.<br>
+     */
     public String getNodePath() {
-        return nodePath;
+        return (path != null) ? path.toString() : "";
     }
 
-    private void setNodePath(String path) {
-        this.nodePath = path;
+    /**
+     * Returns the offset of the element start tag in the document, or -1 if it's unknown.<br>
+     */
+    public int getOffset() {
+        return offset;
     }
 
-    private void extractPath() {
+    /**
+     * Returns the length of the element start tag, 0 if its offset is unknown.<br>
+     */
+    public int getLength() {
+        return length;
+    }
 
-        List<String> pathNames = new ArrayList<String>();
+    /**
+     * Returns the line (1 based) where the element start tag begins, or 0 if it's unknown.<br>
+     */
+    public int getLine() {
+        return line;
+    }
 
-        Node temp;
+    /**
+     * Returns the column (1 based) where the element start tag begins, or 0 if it's unknown.<br>
+     */
+    public int getColumn() {
+        return column;
+    }
 
-        if (getNode() != null) {
+    /**
+     * Returns the number of identical reports found in the document that this report stands for: it's
+     * greater than 1 only when the engine merges duplicates.<br>
+     */
+    public int getOccurrences() {
+        return occurrences;
+    }
 
-            pathNames.add(getNode().getNodeName());
+    /**
+     * Returns the key shared by identical reports, made of the message and of the element name and
+     * attributes (but not of the element path).<br>
+     */
+    String getDuplicateKey() {
+        return message + "\n" + getStringNode();
+    }
 
-            temp = getNode();
+    /**
+     * Returns a copy of this report that also stands for the given duplicate. This report is not modified,
+     * since it can be kept by an <code>IncrementalValidator</code> and added again by the next validation.<br>
+     * @param duplicate a report with the same duplicate key
+     */
+    Report merge(Report duplicate) {
+        Report merged = new Report(this);
+        merged.occurrences += duplicate.occurrences;
+        return merged;
+    }
 
-            while ((temp = temp.getParentNode()) != null) {
-                pathNames.add(temp.getNodeName());
-            }
+    /**
+     * Sets the parser position at the end of the element start tag, that will be converted into an offset by
+     * <code>resolve</code>.<br>
+     */
+    void setParserPosition(int line, int column) {
+        this.parserLine = line;
+        this.parserColumn = column;
+    }
 
-            StringBuffer buf = new StringBuffer();
+    /**
+     * Sets the position of the element start tag.<br>
+     * @param offset offset of the tag
+     * @param length length of the tag
+     * @param line line where the tag begins
+     * @param column column where the tag begins
+     */
+    void setPosition(int offset, int length, int line, int column) {
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.column = column;
+    }
 
-            for (int i = pathNames.size() - 1; i >= 0; i--) {
-                buf.append(pathNames.get(i));
-                if (i != 0) {
-                    buf.append(" > ");
-                }
-            }
+    /**
+     * Converts the parser position into the offset and length of the element start tag.<br>
+     * @param text the parsed text
+     * @param lineOffsets the offsets of the lines of the text
+     * @param shift amount added to the offset
+     * @see EntryRegion#resolve(CharSequence, int[], int)
+     */
+    void resolve(CharSequence text, int[] lineOffsets, int shift) {
+
+        if (parserLine > 0) {
+            int tagEnd = EntryRegion.getOffset(lineOffsets, parserLine, parserColumn);
+            int tagStart = EntryRegion.getTagStart(text, lineOffsets, parserLine, parserColumn);
+            offset = tagStart + shift;
+            length = tagEnd - tagStart;
+        }
+    }
+
+    /**
+     * Sets the line and column where the element start tag begins, from its offset.<br>
+     * @param lineOffsets the offsets of all the lines of the document
+     */
+    void resolveLine(int[] lineOffsets) {
 
-            setNodePath(buf.toString());
+        if (offset >= 0) {
+            line = PositionReader.getLine(lineOffsets, lineOffsets.length, offset);
+            column = offset - lineOffsets[line - 1] + 1;
+        }
+    }
+
+    /**
+     * Moves the report offset by the given amount, if it's known.<br>
+     */
+    void shift(int delta) {
+        if (offset >= 0) {
+            offset += delta;
         }
     }
 
     private String getStringNode() {
         StringBuffer buf = new StringBuffer();
-        if (node != null) {
+        if (nodeName != null) {
             buf.append("<");
-            buf.append(node.getNodeName());
+            buf.append(nodeName);
             buf.append(" ");
-            NamedNodeMap attrMap = node.getAttributes();
-            if (attrMap != null) {
-
-                for (int i = 0; i < attrMap.getLength(); i++) {
-                    Attr attr = (Attr) attrMap.item(i);
-                    buf.append(attr.getName());
-                    buf.append("=\"");
-                    buf.append(attr.getValue());
-                    buf.append("\" ");
-                }
 
+            for (int i = 0; i < attrNames.length; i++) {
+                buf.append(attrNames[i]);
+                buf.append("=\"");
+                buf.append(attrValues[i]);
+                buf.append("\" ");
             }
 
             buf.append(">");
@@ -139,16 +384,99 @@ public class Report {
 
         StringBuffer buf = new StringBuffer();
         buf.append(getMessage() + "\n");
-        if (getNode() != null) {
-            buf.append("Node name: " + getNode().getNodeName() + "\n");
+        if (getNodeName() != null) {
+            buf.append("Node name: " + getNodeName() + "\n");
             buf.append("Node path: " + getNodePath() + "\n");
         }
+        if (occurrences > 1) {
+            buf.append("Occurrences: " + occurrences + "\n");
+        }
 
         buf.append(getStringNode() + " \n");
 
         return buf.toString();
     }
 
+    /**
+     * Writes the report, so that it can be read again by <code>readFrom</code> (see <code>ResultCache</code>).<br>
+     * @param out the output
+     * @throws IOException in case the report cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+
+        out.writeUTF(message);
+        out.writeUTF(rule);
+
+        out.writeBoolean(nodeName != null);
+        if (nodeName != null) {
+            out.writeUTF(nodeName);
+        }
+
+        int depth = 0;
+        for (ElementPath p = path; p != null; p = p.getParent()) {
+            depth++;
+        }
+
+        // Path names are written from the element to the root
+        out.writeInt(depth);
+        for (ElementPath p = path; p != null; p = p.getParent()) {
+            out.writeUTF(p.getName());
+        }
+
+        out.writeInt(attrNames.length);
+        for (int i = 0; i < attrNames.length; i++) {
+            out.writeUTF(attrNames[i]);
+            out.writeUTF(attrValues[i]);
+        }
+
+        out.writeInt(offset);
+        out.writeInt(length);
+        out.writeInt(line);
+        out.writeInt(column);
+        out.writeInt(occurrences);
+    }
+
+    /**
+     * Reads a report written by <code>writeTo</code>.<br>
+     * @param in the input
+     * @return the report
+     * @throws IOException in case the report cannot be read
+     */
+    static Report readFrom(DataInput in) throws IOException {
+
+        Report report = new Report();
+
+        report.message = in.readUTF();
+        report.rule = in.readUTF();
+        report.nodeName = in.readBoolean() ? in.readUTF() : null;
+
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        for (int i = names.length - 1; i >= 0; i--) {
+            report.path = new ElementPath(names[i], report.path);
+        }
+
+        int attrCount = in.readInt();
+        if (attrCount > 0) {
+            report.attrNames = new String[attrCount];
+            report.attrValues = new String[attrCount];
+            for (int i = 0; i < attrCount; i++) {
+                report.attrNames[i] = in.readUTF();
+                report.attrValues[i] = in.readUTF();
+            }
+        }
+
+        report.offset = in.readInt();
+        report.length = in.readInt();
+        report.line = in.readInt();
+        report.column = in.readInt();
+        report.occurrences = in.readInt();
+
+        return report;
+    }
+
     /**
      * Add a simple error report to the validator engine for the given document.<br>
      * The report will only be a user readable error message.<br>
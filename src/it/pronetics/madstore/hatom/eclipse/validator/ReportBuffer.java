@@ -0,0 +1,72 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Report sink that keeps the reports of a single producer (ie: a thread validating a chunk of hentries)
+ * until they are moved, in order, to the sink of the validation run.<br>
+ * Every producer has its own buffer, so reports are collected without any locking: a buffer must only be
+ * drained after its producer has finished.<br>
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public class ReportBuffer implements ReportSink {
+
+    // Buffered reports, in the order they have been added
+    private List<Report> reports = new ArrayList<Report>();
+
+    public void addReport(Report report) {
+        reports.add(report);
+    }
+
+    /**
+     * A buffer is never full: the limit is applied by the sink it is drained to.<br>
+     */
+    public boolean isFull() {
+        return false;
+    }
+
+    /**
+     * Returns the buffered reports.<br>
+     * @return
+     */
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    /**
+     * Moves all the buffered reports to the given sink, in the order they have been added.<br>
+     * @param sink the destination sink
+     */
+    public void drainTo(ReportSink sink) {
+
+        for (Report report : reports) {
+            sink.addReport(report);
+        }
+        reports.clear();
+    }
+
+    /**
+     * Discards all the buffered reports.<br>
+     */
+    public void clear() {
+        reports.clear();
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+/**
+ * Destination of the reports created during a validation run.<br>
+ * The sink is passed down from the engine to all the analyzers of the run, so that analyzers never look
+ * up their engine by document name.<br>
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public interface ReportSink {
+
+    /**
+     * Adds a report to this sink.<br>
+     * @param report the report
+     */
+    public void addReport(Report report);
+
+    /**
+     * Check whether this sink accepts no more reports (ie: the engine report limit has been reached), so
+     * that the validation can stop.<br>
+     * @return <code>true</code> if further reports would be discarded
+     */
+    public boolean isFull();
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of validation results, stored in a directory so that they survive the IDE and the headless runs.<br>
+ * Results are keyed by a hash of the document bytes, of the version of the validation rules
+ * (<code>RULES_VERSION</code>) and of the engine options that change them, so an unchanged document is
+ * neither parsed nor validated again. Entries are never stale: an entry that is no longer used is just
+ * left behind, until <code>removeUnusedEntries</code> or <code>clear</code> are called.<br>
+ * <br>
+ * The cache can be shared by several threads and processes: each entry is written to a temporary file
+ * which is then renamed, so an entry is either complete or missing. Any error while reading or writing an
+ * entry is handled as a cache miss.<br>
+ * <br>
+ * Hits and misses are recorded by the <code>ValidationMetrics</code>.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.2
+ */
+public class ResultCache {
+
+    // Version of the validation rules: it must be increased whenever a change of the rules or of the
+    // reports changes the result of a validation, so that previous results are not used any more
+    public static final int RULES_VERSION = 1;
+
+    // Version of the format of the entries
+    private static final int FORMAT_VERSION = 2;
+
+    // Extension of the entry files
+    private static final String ENTRY_EXTENSION = ".reports";
+
+    // Hexadecimal digits of the keys
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Directory of the entries
+    private File directory;
+
+    /**
+     * Creates a cache whose entries are stored in the given directory, which is created if needed.<br>
+     * @param directory the directory
+     */
+    public ResultCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory of the entries.<br>
+     * @return
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the reports of the validation of the given document, if they have been cached.<br>
+     * @param document the document bytes
+     * @param variant the engine options that change the reports (see <code>ValidatorEngine</code>)
+     * @return the reports, or null if they are not cached
+     */
+    public List<Report> get(byte[] document, String variant) {
+
+        List<Report> reports = read(getEntry(getKey(document, variant)));
+
+        ValidationMetrics.getInstance().recordCacheLookup(reports != null);
+
+        return reports;
+    }
+
+    /**
+     * Reads the reports of a cache entry.<br>
+     * @param entry the entry file
+     * @return the reports, or null if the entry is missing or damaged
+     */
+    private List<Report> read(File entry) {
+
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try {
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+
+            try {
+
+                if (in.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+
+                int count = in.readInt();
+                List<Report> reports = new ArrayList<Report>(count);
+
+                for (int i = 0; i < count; i++) {
+                    reports.add(Report.readFrom(in));
+                }
+
+                // Used entries are kept by removeUnusedEntries
+                entry.setLastModified(System.currentTimeMillis());
+
+                return reports;
+
+            } finally {
+                in.close();
+            }
+
+        } catch (IOException e) {
+            // The entry is damaged (ie: it has been written by a process that has been killed)
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Caches the reports of the validation of the given document.<br>
+     * @param document the document bytes
+     * @param variant the engine options that change the reports
+     * @param reports the reports
+     */
+    public void put(byte[] document, String variant, List<Report> reports) {
+
+        File entry = getEntry(getKey(document, variant));
+        File temp = null;
+
+        try {
+
+            entry.getParentFile().mkdirs();
+            temp = File.createTempFile("entry", ".tmp", entry.getParentFile());
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(reports.size());
+                for (Report report : reports) {
+                    report.writeTo(out);
+                }
+            } finally {
+                out.close();
+            }
+
+            // Another thread could have cached the same document in the meantime, with the same reports
+            if (!temp.renameTo(entry) && !entry.isFile()) {
+                throw new IOException("Unable to create entry " + entry);
+            }
+
+        } catch (IOException e) {
+            // The reports will be cached by the next validation
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the entries that have not been used for the given time.<br>
+     * @param time time in milliseconds
+     */
+    public void removeUnusedEntries(long time) {
+        removeEntries(System.currentTimeMillis() - time);
+    }
+
+    /**
+     * Removes all the entries.<br>
+     */
+    public void clear() {
+        removeEntries(Long.MAX_VALUE);
+    }
+
+    /**
+     * Removes the entries last used before the given time.<br>
+     */
+    private void removeEntries(long time) {
+
+        File[] subdirectories = directory.listFiles();
+
+        if (subdirectories == null) {
+            return;
+        }
+
+        for (File subdirectory : subdirectories) {
+
+            File[] entries = subdirectory.listFiles();
+
+            if (entries != null) {
+                for (File entry : entries) {
+                    if (entry.getName().endsWith(ENTRY_EXTENSION) && entry.lastModified() < time) {
+                        entry.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the entry with the given key. Entries are spread over several subdirectories, so
+     * that directories stay small.<br>
+     */
+    private File getEntry(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key.substring(2) + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Returns the key of the given document.<br>
+     */
+    private static String getKey(byte[] document, String variant) {
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-1
+            throw new IllegalStateException(e.getMessage());
+        }
+
+        try {
+            digest.update((RULES_VERSION + "\n" + variant + "\n").getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        digest.update(document);
+
+        byte[] hash = digest.digest();
+        char[] key = new char[hash.length * 2];
+
+        for (int i = 0; i < hash.length; i++) {
+            key[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            key[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+
+        return new String(key);
+    }
+
+    /**
+     * Reads all the bytes of the given stream, which is not closed.<br>
+     * @param is the stream
+     * @return the bytes
+     * @throws IOException in case the stream cannot be read
+     */
+    static byte[] readAll(InputStream is) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = is.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, count);
+        }
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,995 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.ATTR_NAME_TITLE;
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.AUTHOR_ANALYZER;
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.DATE_TIME_ANALYZER;
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.KEYWORD_ENTRY_KEY;
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.KEYWORD_HENTRY;
+import static it.pronetics.madstore.hatom.eclipse.validator.Analyzer.KEYWORD_HFEED;
+import static it.pronetics.madstore.hatom.eclipse.validator.BaseAnalyzer.HATOM_HENTRY_ATTRIBUTES;
+import static it.pronetics.madstore.hatom.eclipse.validator.HentryAnalyzer.CHECKABLE_KEYWORDS;
+import static it.pronetics.madstore.hatom.eclipse.validator.HentryAnalyzer.MANDATORY_KEYWORDS;
+import static it.pronetics.madstore.hatom.eclipse.validator.HentryAnalyzer.VALIDATION_CONFIG_CLASSES;
+import static it.pronetics.madstore.hatom.eclipse.validator.HentryChildAnalyzer.HENTRY_CHILDREN;
+import static it.pronetics.madstore.hatom.eclipse.validator.HfeedAnalyzer.FEED_KEY;
+import static it.pronetics.madstore.hatom.eclipse.validator.KeywordIndex.KEYWORD_FN;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ALL_KEYWORDS;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_CLASS;
+import static it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine.ATTR_REL;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler that validates an hAtom XHTML document in a single forward pass.<br>
+ * It applies the same hfeed, hentry and hentry children rules of <code>HfeedAnalyzer</code>,
+ * <code>HentryAnalyzer</code> and <code>HentryChildAnalyzer</code>, but instead of walking a DOM tree
+ * several times it keeps a stack of the open elements together with the state of the hfeed and hentry
+ * they belong to, so that every element is examined only once.<br>
+ * <br>
+ * The hfeed layout (page, single or multi feed) is only known when the whole document has been read, so
+ * the reports that depend on it are kept aside until the end of the document, or until the first (or
+ * second) hfeed is found.<br>
+ * Reports are added to the engine in document order rather than grouped by rule.<br>
+ * <br>
+ * When the document is read through a <code>PositionReader</code>, the offset of each start tag is recorded
+ * in an array indexed by element ordinal, and the reports get the position of their element.<br>
+ * <br>
+ * The validator can also record the source region of each hentry together with its reports (see
+ * <code>EntryRegion</code>), and can validate a fragment made of a single hentry, so that
+ * <code>IncrementalValidator</code> can validate again just the edited hentries.<br>
+ * <br>
+ * The validation stops, failing the parse, as soon as the monitor of the engine cancels it, or the engine
+ * report limit is reached: the engine does not treat the latter as an error.<br>
+ * <br>
+ * When the engine records timings, the validator measures the time of the keyword lookup, of the hfeed and
+ * hentry rules and of each hentry child keyword, and the engine adds them to its timings at the end of the
+ * parse.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.10
+ */
+public class StreamingValidator extends DefaultHandler {
+
+    // Feed key position states, see HfeedAnalyzer
+    private static final int FEED_KEY_POS_UNDEFINED = -1;
+    private static final int FEED_KEY_POS_BEFORE = 0;
+    private static final int FEED_KEY_POS_AFTER = 1;
+
+    // Masks of the keywords that cannot be used outside an hfeed, and outside an hentry (see KeywordIndex)
+    private static final int ALL_KEYWORDS_MASK = KeywordIndex.getKeywordMask(ALL_KEYWORDS);
+    private static final int CHECKABLE_KEYWORDS_MASK = KeywordIndex.getKeywordMask(CHECKABLE_KEYWORDS);
+
+    // Engine that collects the reports
+    private ValidatorEngine engine;
+
+    // Elements that are currently open, the document element is the first one
+    private List<ElementFrame> stack;
+
+    // Number of hfeed elements not contained inside another hfeed
+    private int hfeedCount;
+
+    // Feed-key values of all the hfeed elements (not of the page acting as hfeed), used to find duplicates
+    // in multi feed documents
+    private List<String> feedKeyValues;
+
+    // The document element acting as hfeed, valid until an hfeed element is found
+    private FeedScope pageFeed;
+
+    // The hfeed element we are currently inside, if any
+    private FeedScope currentFeed;
+
+    // Reports that are valid only if the page itself is the hfeed
+    private ReportBuffer pageReports;
+
+    // Reports for elements outside hfeed, valid only if an hfeed is found later
+    private ReportBuffer outsideReports;
+
+    // Duplicate feed-key reports of the first hfeed, valid only if the document has more than one hfeed
+    private ReportBuffer multiFeedReports;
+
+    // Parser position, used to record the hentry regions and the report positions
+    private Locator locator;
+
+    // true if hentry regions must be recorded
+    private boolean recordRegions;
+
+    // Names of the ancestors of the hentry, when the document is an hentry fragment
+    private List<String> fragmentAncestors;
+
+    // Recorded hentry regions, grouped by hfeed
+    private List<List<EntryRegion>> feedRegions;
+
+    // Parser position at the end of the document element start tag
+    private int documentElementLine;
+    private int documentElementColumn;
+
+    // Records the positions of the characters being parsed, null if report positions are not recorded
+    private PositionReader positions;
+
+    // Offset of the start tag of each element, indexed by element ordinal (document order)
+    private int[] elementOffsets;
+
+    // Number of elements started so far
+    private int elementCount;
+
+    // Time spent by the rules of the current parse, null if the engine does not record timings
+    private ValidationTimings timings;
+
+    /**
+     * Creates a new validator that adds its reports to the given engine.<br>
+     * @param engine the engine associated with the document to be validated
+     */
+    public StreamingValidator(ValidatorEngine engine) {
+        this(engine, false);
+    }
+
+    /**
+     * Creates a new validator that adds its reports to the given engine and, if requested, records the
+     * regions of the hentries.<br>
+     * @param engine the engine associated with the document to be validated
+     * @param recordRegions <code>true</code> if hentry regions must be recorded
+     */
+    public StreamingValidator(ValidatorEngine engine, boolean recordRegions) {
+        this.engine = engine;
+        this.recordRegions = recordRegions;
+        this.timings = (engine.getTimings() != null) ? new ValidationTimings() : null;
+    }
+
+    /**
+     * Makes the validator handle the document as a fragment containing a single hentry, whose ancestors
+     * in the whole document have the given names. The ancestors are assumed to be a valid hfeed where the
+     * feed-key has already been found.<br>
+     * @param ancestors names of the ancestors, from the document element
+     */
+    public void setFragmentAncestors(List<String> ancestors) {
+        this.fragmentAncestors = ancestors;
+    }
+
+    /**
+     * Makes the reports know the position of their element in the document (see <code>Report.getOffset</code>).
+     * The given reader must be the one the parser reads the document from.<br>
+     * @param positions the reader of the document
+     */
+    public void setPositionReader(PositionReader positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Returns the offsets of the element start tags, indexed by the element ordinal in document order (which
+     * is also the order of the elements of a DOM object of the document).<br>
+     * @return the offsets, or null if report positions are not recorded
+     */
+    public int[] getElementOffsets() {
+
+        if (elementOffsets == null) {
+            return null;
+        }
+
+        int[] offsets = new int[elementCount];
+        System.arraycopy(elementOffsets, 0, offsets, 0, elementCount);
+
+        return offsets;
+    }
+
+    /**
+     * Returns the recorded hentry regions, grouped by hfeed, in document order.<br>
+     * @return the regions, or an empty list if regions are not recorded
+     */
+    public List<List<EntryRegion>> getFeedRegions() {
+        return feedRegions;
+    }
+
+    /**
+     * Returns the parser line at the end of the document element start tag.<br>
+     */
+    public int getDocumentElementLine() {
+        return documentElementLine;
+    }
+
+    /**
+     * Returns the parser column at the end of the document element start tag.<br>
+     */
+    public int getDocumentElementColumn() {
+        return documentElementColumn;
+    }
+
+    /**
+     * Returns the time spent by the rules during the last parse: keyword lookup (index phase), hfeed rules,
+     * hentry rules and hentry child keywords. The parse phase is left to the caller.<br>
+     * @return the timings, or null if the engine does not record timings
+     */
+    ValidationTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Keeps the parser position, used to record the hentry regions and the report positions.<br>
+     */
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
+    /**
+     * Resets the validation state.<br>
+     */
+    @Override
+    public void startDocument() {
+        stack = new ArrayList<ElementFrame>();
+        hfeedCount = 0;
+        feedKeyValues = new ArrayList<String>();
+        pageFeed = null;
+        currentFeed = null;
+        pageReports = new ReportBuffer();
+        outsideReports = new ReportBuffer();
+        multiFeedReports = new ReportBuffer();
+        feedRegions = new ArrayList<List<EntryRegion>>();
+        elementOffsets = (positions != null) ? new int[256] : null;
+        elementCount = 0;
+
+        if (timings != null) {
+            timings.reset();
+        }
+
+        if (fragmentAncestors != null) {
+
+            for (String name : fragmentAncestors) {
+                stack.add(new ElementFrame(name, getParentPath(), stack.size()));
+            }
+
+            // The parent of the hentry acts as an hfeed with its feed-key
+            hfeedCount = 1;
+            currentFeed = new FeedScope(stack.get(stack.size() - 1), true);
+            currentFeed.feedKeyPosition = FEED_KEY_POS_BEFORE;
+            currentFeed.feedKeyFound = true;
+        }
+    }
+
+    /**
+     * Applies all the rules that concern the element being opened.<br>
+     * @throws SAXException if the validation has been canceled, or the engine report limit has been reached
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+
+        if (engine.isCanceled()) {
+            throw new SAXException("Validation canceled");
+        }
+        if (engine.isFull()) {
+            throw new SAXException("Report limit reached");
+        }
+
+        long start = startTiming();
+
+        ElementFrame frame = new ElementFrame(qName, attributes, getParentPath(), stack.size());
+        stack.add(frame);
+
+        if (locator != null) {
+            frame.line = locator.getLineNumber();
+            frame.column = locator.getColumnNumber();
+            if (frame.depth == 0) {
+                documentElementLine = frame.line;
+                documentElementColumn = frame.column;
+            }
+        }
+
+        frame.ordinal = elementCount++;
+
+        if (elementOffsets != null) {
+            recordElementOffset(frame);
+        }
+
+        long rulesStart = stopTiming(ValidationTimings.INDEX, start);
+        long entryTime = getEntryTime();
+
+        boolean hfeed = matches(frame, ATTR_CLASS, KEYWORD_HFEED);
+
+        if (currentFeed != null) {
+
+            if (hfeed) {
+                engine.addReport(createReport(Report.RULE_NESTED_KEYWORD, KEYWORD_HFEED + " keyword cannot be contained inside another hAtom node of the same level", frame));
+            }
+            currentFeed.startChild(frame);
+
+        } else if (hfeed) {
+
+            hfeedCount++;
+
+            if (hfeedCount == 1) {
+                // The page is not the hfeed, elements found so far are outside any hfeed
+                pageFeed = null;
+                pageReports.clear();
+                outsideReports.drainTo(engine);
+            } else if (hfeedCount == 2) {
+                multiFeedReports.drainTo(engine);
+            }
+
+            currentFeed = new FeedScope(frame, true);
+
+        } else {
+
+            checkOutsideFeed(frame);
+
+            if (hfeedCount == 0) {
+                if (pageFeed == null) {
+                    pageFeed = new FeedScope(frame, false);
+                } else {
+                    pageFeed.startChild(frame);
+                }
+            }
+        }
+
+        stopRules(rulesStart, entryTime);
+    }
+
+    /**
+     * Closes the scopes that end with the current element.<br>
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+
+        ElementFrame frame = stack.get(stack.size() - 1);
+        long start = startTiming();
+        long entryTime = getEntryTime();
+
+        if (currentFeed != null) {
+            currentFeed.end(frame);
+            if (currentFeed.root == frame) {
+                currentFeed = null;
+            }
+        } else if (pageFeed != null) {
+            pageFeed.end(frame);
+        }
+
+        stack.remove(stack.size() - 1);
+        stopRules(start, entryTime);
+    }
+
+    /**
+     * Returns the current time, if timings are recorded.<br>
+     */
+    private long startTiming() {
+        return (timings != null) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time elapsed since the given start to a phase, if timings are recorded.<br>
+     * @return the current time
+     */
+    private long stopTiming(int phase, long start) {
+
+        if (timings == null) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        timings.add(phase, now - start);
+
+        return now;
+    }
+
+    /**
+     * Returns the time spent so far by the hentry rules, if timings are recorded.<br>
+     */
+    private long getEntryTime() {
+        return (timings != null) ? timings.getTime(ValidationTimings.HENTRY) : 0;
+    }
+
+    /**
+     * Adds the time of the rules applied since the given start to the hfeed phase, taking away the time of
+     * the hentry rules, which has already been added to the hentry phase.<br>
+     * @param start start of the rules
+     * @param entryTime time of the hentry rules at the start
+     */
+    private void stopRules(long start, long entryTime) {
+
+        if (timings != null) {
+            timings.add(ValidationTimings.HFEED, System.nanoTime() - start - (getEntryTime() - entryTime));
+        }
+    }
+
+    /**
+     * Adds the reports that depend on the hfeed layout, now that the layout is known.<br>
+     */
+    @Override
+    public void endDocument() {
+        if (hfeedCount == 0) {
+            pageReports.drainTo(engine);
+            if (pageFeed != null && pageFeed.regions != null) {
+                feedRegions.add(pageFeed.regions);
+            }
+        }
+    }
+
+    /**
+     * Checks that hAtom keywords are not used by an element outside any hfeed.<br>
+     * @param frame the element
+     */
+    private void checkOutsideFeed(ElementFrame frame) {
+        ReportSink target = (hfeedCount == 0) ? outsideReports : engine;
+        checkInvalidPosition(frame, ALL_KEYWORDS_MASK, target);
+    }
+
+    /**
+     * Creates a report for each attribute of the element whose value matches one of the given keywords,
+     * once for each matching keyword.<br>
+     * @param frame the element
+     * @param keywordMask mask of the keywords that cannot be used by the element
+     * @param target sink where reports are added
+     */
+    private void checkInvalidPosition(ElementFrame frame, int keywordMask, ReportSink target) {
+
+        for (int i = 0; i < frame.attrNames.length; i++) {
+
+            int matches = Integer.bitCount(frame.attrMasks[i] & keywordMask);
+
+            for (int j = 0; j < matches; j++) {
+
+                StringBuffer message = new StringBuffer("Attribute ").append(frame.attrNames[i]);
+                message.append(" with value ").append(frame.attrValues[i]).append(" is in invalid position. \n");
+                message.append("Please check that node is inside his regular parent node \n");
+
+                target.addReport(createReport(Report.RULE_INVALID_POSITION, message.toString(), frame));
+            }
+        }
+    }
+
+    /**
+     * Check whether the element has the given hAtom keyword in its class or rel attribute.<br>
+     * @see KeywordIndex#matches(org.w3c.dom.Node, String, String)
+     */
+    private static boolean matches(ElementFrame frame, String attrName, String keyword) {
+        int mask = ATTR_REL.equals(attrName) ? frame.relMask : frame.classMask;
+        return (mask & KeywordIndex.getKeywordBit(keyword)) != 0;
+    }
+
+    /**
+     * Creates the region of the given hentry element, if regions must be recorded.<br>
+     * @param frame the hentry element, whose start tag has just been parsed
+     * @return the region, or null
+     */
+    private EntryRegion createRegion(ElementFrame frame) {
+
+        if (!recordRegions || locator == null) {
+            return null;
+        }
+
+        List<String> ancestors = new ArrayList<String>();
+        for (int i = 0; i < frame.depth; i++) {
+            ancestors.add(stack.get(i).name);
+        }
+
+        return new EntryRegion(ancestors, locator.getLineNumber(), locator.getColumnNumber());
+    }
+
+    /**
+     * Returns the message of an entry-key value that is already used in the hfeed.<br>
+     */
+    static String getDuplicateEntryKeyMessage(String value) {
+        return KEYWORD_ENTRY_KEY + " value " + value + " is already present in current hentry";
+    }
+
+    /**
+     * Returns the message of an empty entry-key value.<br>
+     */
+    static String getEmptyEntryKeyMessage() {
+        return KEYWORD_ENTRY_KEY + " cannot have empty value";
+    }
+
+    /**
+     * Records the offset of the start tag of the given element, -1 if it's unknown.<br>
+     */
+    private void recordElementOffset(ElementFrame frame) {
+
+        if (frame.ordinal == elementOffsets.length) {
+            int[] larger = new int[elementOffsets.length * 2];
+            System.arraycopy(elementOffsets, 0, larger, 0, frame.ordinal);
+            elementOffsets = larger;
+        }
+
+        elementOffsets[frame.ordinal] = (frame.line > 0) ? positions.getTagStart(frame.line, frame.column) : -1;
+    }
+
+    /**
+     * Creates a report for the given element.<br>
+     * @param rule the rule that emits the report
+     * @param message the error message
+     * @param frame the element
+     * @return the report
+     */
+    private Report createReport(String rule, String message, ElementFrame frame) {
+
+        Report report = new Report(rule, message, frame.path, frame.attrNames, frame.attrValues);
+        report.setParserPosition(frame.line, frame.column);
+
+        if (elementOffsets != null && frame.ordinal >= 0 && elementOffsets[frame.ordinal] >= 0) {
+            int offset = elementOffsets[frame.ordinal];
+            int length = positions.getOffset(frame.line, frame.column) - offset;
+            report.setPosition(offset, length, positions.getLine(offset), positions.getColumn(offset));
+        }
+
+        return report;
+    }
+
+    /**
+     * Returns the path of the element on top of the stack, the parent of the element being opened.<br>
+     */
+    private ElementPath getParentPath() {
+        return stack.isEmpty() ? ElementPath.DOCUMENT : stack.get(stack.size() - 1).path;
+    }
+
+    /**
+     * An open element, with the attributes needed by the validation rules.<br>
+     */
+    private static class ElementFrame {
+
+        // Element name
+        private String name;
+
+        // Attribute names and values, in document order
+        private String[] attrNames;
+        private String[] attrValues;
+
+        // Keywords used in each attribute, see KeywordIndex
+        private int[] attrMasks;
+
+        // Position in the element stack
+        private int depth;
+
+        // Path from root to the element, shared by the reports of the element and of its descendants
+        private ElementPath path;
+
+        // Parser position at the end of the start tag, 0 if unknown (ie: fragment ancestors)
+        private int line;
+        private int column;
+
+        // Ordinal of the element in document order, -1 for fragment ancestors
+        private int ordinal = -1;
+
+        // Keywords used in the class and rel attributes, see KeywordIndex
+        private int classMask;
+        private int relMask;
+
+        // Number of hentry children keywords matched by the element, grouped by attribute
+        private int classMatches;
+        private int relMatches;
+
+        // true for a valid author node (vcard author), and when one of its children is an fn node
+        private boolean vcardAuthor;
+        private boolean fnChild;
+
+        /**
+         * Creates an element without attributes.<br>
+         */
+        private ElementFrame(String name, ElementPath parentPath, int depth) {
+            this.name = name;
+            this.depth = depth;
+            this.path = new ElementPath(name, parentPath);
+            attrNames = new String[0];
+            attrValues = new String[0];
+            attrMasks = new int[0];
+        }
+
+        private ElementFrame(String name, Attributes attributes, ElementPath parentPath, int depth) {
+            this.name = name;
+            this.depth = depth;
+            this.path = new ElementPath(name, parentPath);
+            attrNames = new String[attributes.getLength()];
+            attrValues = new String[attributes.getLength()];
+            attrMasks = new int[attributes.getLength()];
+            for (int i = 0; i < attrNames.length; i++) {
+                attrNames[i] = attributes.getQName(i);
+                attrValues[i] = attributes.getValue(i);
+                attrMasks[i] = KeywordIndex.getKeywordMask(attrValues[i]);
+            }
+            classMask = getAttributeMask(ATTR_CLASS);
+            relMask = getAttributeMask(ATTR_REL);
+        }
+
+        /**
+         * Returns the keywords used in the attribute, or 0 if there's no such attribute.<br>
+         */
+        private int getAttributeMask(String attrName) {
+            for (int i = 0; i < attrNames.length; i++) {
+                if (attrNames[i].equals(attrName)) {
+                    return attrMasks[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the attribute value, or an empty string if there's no such attribute (as DOM does).<br>
+         */
+        private String getAttribute(String attrName) {
+            for (int i = 0; i < attrNames.length; i++) {
+                if (attrNames[i].equals(attrName)) {
+                    return attrValues[i];
+                }
+            }
+            return "";
+        }
+    }
+
+    /**
+     * State of an hfeed element (or of the document element, when the page itself is the hfeed).<br>
+     * Performs the feed-key checks of <code>HfeedAnalyzer</code> and the hentry discovery of
+     * <code>HentryAnalyzer</code>.<br>
+     */
+    private class FeedScope {
+
+        // The hfeed element
+        private ElementFrame root;
+
+        // false when the page itself is the hfeed
+        private boolean element;
+
+        // Where this scope's reports go
+        private ReportSink target;
+
+        // Feed-key position state
+        private int feedKeyPosition = FEED_KEY_POS_UNDEFINED;
+
+        // true when a feed-key has been found
+        private boolean feedKeyFound;
+
+        // true when the hfeed is also the only hentry
+        private boolean hentryFeed;
+
+        // Entry-key values of the hentries in this hfeed
+        private List<String> entryKeyValues = new ArrayList<String>();
+
+        // The hentry we are currently inside, if any
+        private EntryScope currentEntry;
+
+        // Regions of the hentries in this hfeed, when recorded
+        private List<EntryRegion> regions;
+
+        private FeedScope(ElementFrame root, boolean element) {
+            this.root = root;
+            this.element = element;
+            this.target = element ? engine : pageReports;
+
+            if (recordRegions) {
+                regions = new ArrayList<EntryRegion>();
+                if (element) {
+                    feedRegions.add(regions);
+                }
+            }
+
+            checkFeedKey(root);
+
+            hentryFeed = matches(root, ATTR_CLASS, KEYWORD_HENTRY);
+            if (hentryFeed) {
+                long start = startTiming();
+                currentEntry = new EntryScope(this, root, null);
+                stopTiming(ValidationTimings.HENTRY, start);
+            }
+        }
+
+        /**
+         * Applies the hfeed rules to an element contained inside the hfeed.<br>
+         */
+        private void startChild(ElementFrame frame) {
+
+            checkFeedKey(frame);
+
+            if (currentEntry != null) {
+                long start = startTiming();
+                currentEntry.startChild(frame);
+                stopTiming(ValidationTimings.HENTRY, start);
+            } else if (matches(frame, ATTR_CLASS, KEYWORD_HENTRY)) {
+                long start = startTiming();
+                EntryRegion region = createRegion(frame);
+                if (region != null) {
+                    regions.add(region);
+                }
+                currentEntry = new EntryScope(this, frame, region);
+                stopTiming(ValidationTimings.HENTRY, start);
+            } else {
+                // This finds hentry children placed outside hentry nodes
+                checkInvalidPosition(frame, CHECKABLE_KEYWORDS_MASK, target);
+            }
+        }
+
+        /**
+         * Closes an element contained in the hfeed, or the hfeed itself.<br>
+         */
+        private void end(ElementFrame frame) {
+
+            if (currentEntry != null) {
+                long start = startTiming();
+                currentEntry.end(frame);
+                if (currentEntry.root == frame) {
+                    if (currentEntry.region != null) {
+                        currentEntry.region.setEndPosition(locator.getLineNumber(), locator.getColumnNumber());
+                    }
+                    currentEntry = null;
+                }
+                stopTiming(ValidationTimings.HENTRY, start);
+            }
+
+            if (frame == root && !feedKeyFound) {
+                target.addReport(createReport(Report.RULE_MISSING_FEED_KEY, "Mandatory hfeed child keyword " + FEED_KEY + " is missing", root));
+            }
+        }
+
+        /**
+         * Performs validation of the feed-key keyword and of its position.<br>
+         */
+        private void checkFeedKey(ElementFrame frame) {
+
+            if (matches(frame, ATTR_CLASS, FEED_KEY)) {
+
+                String value = frame.getAttribute(ATTR_NAME_TITLE);
+
+                // Duplicate keys are checked only if we have a multi feed document
+                if (element && feedKeyValues.contains(value)) {
+                    Report report = createReport(Report.RULE_DUPLICATE_FEED_KEY, FEED_KEY + " value " + value + " is already present in the document", frame);
+                    if (hfeedCount == 1) {
+                        multiFeedReports.addReport(report);
+                    } else {
+                        target.addReport(report);
+                    }
+                }
+
+                if (feedKeyPosition == FEED_KEY_POS_UNDEFINED) {
+                    feedKeyPosition = FEED_KEY_POS_BEFORE;
+                }
+
+                if (!feedKeyFound) {
+                    feedKeyFound = true;
+                    if ("".equals(value)) {
+                        target.addReport(createReport(Report.RULE_EMPTY_FEED_KEY, FEED_KEY + " cannot have empty value", frame));
+                    } else if (element) {
+                        // The page key is dropped together with the page scope when an hfeed is found
+                        feedKeyValues.add(value);
+                    }
+                } else {
+                    target.addReport(createReport(Report.RULE_MULTIPLE_FEED_KEYS, FEED_KEY + " keyword is already present for this hfeed", frame));
+                }
+
+            } else if (feedKeyPosition == FEED_KEY_POS_UNDEFINED && matches(frame, ATTR_CLASS, KEYWORD_HENTRY)) {
+                feedKeyPosition = FEED_KEY_POS_AFTER;
+                target.addReport(createReport(Report.RULE_FEED_KEY_POSITION, FEED_KEY + " MUST be placed before any hentry", frame));
+            }
+        }
+    }
+
+    /**
+     * State of an hentry element: performs the checks of <code>HentryAnalyzer</code> and of the
+     * hentry children analyzers (<code>HentryChildAnalyzer</code>, <code>DateTimeAnalyzer</code> and
+     * <code>AuthorVcardAnalyzer</code>).<br>
+     */
+    private class EntryScope {
+
+        // The hfeed containing this hentry
+        private FeedScope feed;
+
+        // The hentry element
+        private ElementFrame root;
+
+        // Region of the hentry, when recorded
+        private EntryRegion region;
+
+        // Mask of the keywords used so far in the class attribute, see KeywordIndex
+        private int keywords;
+
+        // true when an entry-key has been found
+        private boolean entryKeyFound;
+
+        // Number of hAtom keywords matched by the open elements of this hentry, grouped by attribute.
+        // Each one of them makes a nested hentry child keyword invalid.
+        private int openClassMatches;
+        private int openRelMatches;
+
+        private EntryScope(FeedScope feed, ElementFrame root, EntryRegion region) {
+            this.feed = feed;
+            this.root = root;
+            this.region = region;
+            checkFeedKeywords(root);
+            checkMandatoryKeywords(root);
+            checkEntryKey(root);
+        }
+
+        /**
+         * Applies the hentry rules to an element contained inside the hentry.<br>
+         */
+        private void startChild(ElementFrame frame) {
+
+            if (matches(frame, ATTR_CLASS, KEYWORD_HENTRY)) {
+                addReport(Report.RULE_NESTED_KEYWORD, KEYWORD_HENTRY + " keyword cannot be contained inside another hAtom node of the same level", frame);
+            }
+
+            checkFeedKeywords(frame);
+            checkMandatoryKeywords(frame);
+            checkEntryKey(frame);
+
+            // Nested hentry children
+            for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
+                String message = HENTRY_CHILDREN[i] + " keyword cannot be contained inside another hAtom node of the same level";
+                if (openClassMatches > 0 && matches(frame, ATTR_CLASS, HENTRY_CHILDREN[i])) {
+                    for (int j = 0; j < openClassMatches; j++) {
+                        addReport(Report.RULE_NESTED_KEYWORD, message, frame);
+                    }
+                }
+                if (openRelMatches > 0 && matches(frame, ATTR_REL, HENTRY_CHILDREN[i])) {
+                    for (int j = 0; j < openRelMatches; j++) {
+                        addReport(Report.RULE_NESTED_KEYWORD, message, frame);
+                    }
+                }
+            }
+
+            // fn property of an author node
+            ElementFrame parent = stack.get(frame.depth - 1);
+            if (parent.vcardAuthor && matches(frame, ATTR_CLASS, KEYWORD_FN)) {
+                parent.fnChild = true;
+            }
+
+            // hAtom keywords of the element itself
+            for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
+
+                long start = startTiming();
+                String keyword = HENTRY_CHILDREN[i];
+                String attrName = HATOM_HENTRY_ATTRIBUTES.get(keyword);
+                String analyzerName = VALIDATION_CONFIG_CLASSES.get(keyword);
+
+                boolean valid;
+                if (AUTHOR_ANALYZER.equals(analyzerName)) {
+                    valid = AuthorVcardAnalyzer.isVcardAuthor(frame.getAttribute(attrName));
+                    frame.vcardAuthor |= valid;
+                } else {
+                    valid = matches(frame, attrName, keyword);
+                }
+
+                if (valid) {
+                    if (ATTR_CLASS.equals(attrName)) {
+                        frame.classMatches++;
+                    } else {
+                        frame.relMatches++;
+                    }
+                    if (DATE_TIME_ANALYZER.equals(analyzerName)) {
+                        checkDateTime(frame, keyword);
+                    }
+                } else {
+                    checkInvalidAttributes(frame, keyword);
+                }
+
+                if (timings != null) {
+                    timings.addChild(i, System.nanoTime() - start);
+                }
+            }
+
+            openClassMatches += frame.classMatches;
+            openRelMatches += frame.relMatches;
+        }
+
+        /**
+         * Closes an element contained in the hentry, or the hentry itself.<br>
+         */
+        private void end(ElementFrame frame) {
+
+            if (frame == root) {
+                for (int i = 0; i < MANDATORY_KEYWORDS.length; i++) {
+                    if ((keywords & KeywordIndex.getKeywordBit(MANDATORY_KEYWORDS[i])) == 0) {
+                        addReport(Report.RULE_MISSING_ENTRY_CHILD, "Mandatory entry child keyword " + MANDATORY_KEYWORDS[i] + " is missing", root);
+                    }
+                }
+            } else {
+                if (frame.vcardAuthor && !frame.fnChild) {
+                    addReport(Report.RULE_AUTHOR_HCARD, "Node" + frame.name + "must be a valid hCard and must contain a fn property", frame);
+                }
+                openClassMatches -= frame.classMatches;
+                openRelMatches -= frame.relMatches;
+            }
+        }
+
+        /**
+         * Checks an element using a keyword that implements the datetime design pattern.<br>
+         */
+        private void checkDateTime(ElementFrame frame, String keyword) {
+
+            if (!DateTimeAnalyzer.isDateTimeTag(frame.name)) {
+                addReport(Report.RULE_DATETIME_TAG, keyword + " hAtom keyword must be contained inside an <abbr> tag", frame);
+            }
+
+            if (!DateTimeAnalyzer.dateTimeMatches(frame.getAttribute(ATTR_NAME_TITLE))) {
+                addReport(Report.RULE_DATETIME_PATTERN, keyword + " date does not match pattern YYYY-MM-DDTHH:MM:SS+ZZ:ZZ", frame);
+            }
+        }
+
+        /**
+         * Marks the region as non local if the element uses keywords that concern the hfeed.<br>
+         */
+        private void checkFeedKeywords(ElementFrame frame) {
+            if (region != null && (matches(frame, ATTR_CLASS, FEED_KEY) || matches(frame, ATTR_CLASS, KEYWORD_HFEED))) {
+                region.setNonLocal();
+            }
+        }
+
+        /**
+         * Marks the keywords used by the element as found.<br>
+         */
+        private void checkMandatoryKeywords(ElementFrame frame) {
+            keywords |= frame.classMask;
+        }
+
+        /**
+         * Checks that entry-key values are unique inside their hfeed and that an hentry has only one
+         * entry-key.<br>
+         */
+        private void checkEntryKey(ElementFrame frame) {
+
+            if (matches(frame, ATTR_CLASS, KEYWORD_ENTRY_KEY)) {
+
+                String value = frame.getAttribute(ATTR_NAME_TITLE);
+                Report report = null;
+
+                if (feed.entryKeyValues.contains(value)) {
+                    report = createReport(Report.RULE_DUPLICATE_ENTRY_KEY, getDuplicateEntryKeyMessage(value), frame);
+                } else if ("".equals(value)) {
+                    report = createReport(Report.RULE_EMPTY_ENTRY_KEY, getEmptyEntryKeyMessage(), frame);
+                } else {
+                    feed.entryKeyValues.add(value);
+                }
+
+                if (report != null) {
+                    feed.target.addReport(report);
+                }
+
+                // The uniqueness of the value depends on the whole hfeed: the region keeps a report in any case
+                if (region != null) {
+                    region.addEntryKey(value, (report != null) ? report : createReport(Report.RULE_OTHER, "", frame), report != null);
+                }
+
+                if (!entryKeyFound) {
+                    entryKeyFound = true;
+                } else {
+                    addReport(Report.RULE_MULTIPLE_ENTRY_KEYS, "There's more than one " + KEYWORD_ENTRY_KEY + " in the hentry", root);
+                }
+            }
+        }
+
+        /**
+         * Reports the attributes of the element that use the given keyword, which is not valid for them.<br>
+         */
+        private void checkInvalidAttributes(ElementFrame frame, String keyword) {
+            int bit = KeywordIndex.getKeywordBit(keyword);
+            for (int i = 0; i < frame.attrNames.length; i++) {
+                if ((frame.attrMasks[i] & bit) != 0) {
+                    addReport(Report.RULE_INVALID_ATTRIBUTE, "hAtom keyword " + keyword + " cannot be used in attribute " + frame.attrNames[i], frame);
+                }
+            }
+        }
+
+        private void addReport(String rule, String message, ElementFrame frame) {
+            Report report = createReport(rule, message, frame);
+            feed.target.addReport(report);
+            if (region != null) {
+                region.addReport(report);
+            }
+        }
+    }
+}
@@ -19,8 +19,10 @@ package it.pronetics.madstore.hatom.eclipse.validator;
 /**
  * Simple class that measures a time interval.<br>
  * @author Andrea Castello
- * @version 1.0
+ * @version 1.1
+ * @deprecated validation time is measured phase by phase, in nanoseconds, by <code>ValidationTimings</code>
  */
+@Deprecated
 public class TimeMeasurer {
 
     // Time of measure start in milliseconds
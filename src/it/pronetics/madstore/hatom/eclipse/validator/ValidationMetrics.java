@@ -0,0 +1,331 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histogram of all the validations run in the JVM, exposed through JMX (see
+ * <code>ValidationMetricsMBean</code>) so that validation can be monitored on build agents.<br>
+ * <br>
+ * Engines record each document validation, the result cache records its lookups. Reports are counted by
+ * the rule that emitted them (see <code>Report.getRule</code>). Latencies are kept in a histogram with four
+ * buckets for each doubling, so percentiles are the upper bound of their bucket, at most 19% above the
+ * actual value.<br>
+ * There's a single instance, shared by the plugin and by the headless validator: it's registered by
+ * <code>register</code>, which can be called more than once. All the methods are thread safe.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public class ValidationMetrics implements ValidationMetricsMBean {
+
+    // Name of the MBean
+    public static final String OBJECT_NAME = "it.pronetics.madstore.hatom:type=ValidationMetrics";
+
+    // Rules whose reports are counted, "other" being the last one
+    public static final String[] RULE_NAMES = { Report.RULE_INVALID_POSITION, Report.RULE_NESTED_KEYWORD,
+            Report.RULE_MISSING_FEED_KEY, Report.RULE_MISSING_ENTRY_CHILD, Report.RULE_FEED_KEY_POSITION,
+            Report.RULE_DUPLICATE_FEED_KEY, Report.RULE_EMPTY_FEED_KEY, Report.RULE_MULTIPLE_FEED_KEYS,
+            Report.RULE_DUPLICATE_ENTRY_KEY, Report.RULE_EMPTY_ENTRY_KEY, Report.RULE_MULTIPLE_ENTRY_KEYS,
+            Report.RULE_AUTHOR_HCARD, Report.RULE_DATETIME_TAG, Report.RULE_DATETIME_PATTERN,
+            Report.RULE_INVALID_ATTRIBUTE, Report.RULE_OTHER };
+
+    // Index of each rule in RULE_NAMES
+    private static final Map<String, Integer> RULE_INDEXES = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < RULE_NAMES.length; i++) {
+            RULE_INDEXES.put(RULE_NAMES[i], i);
+        }
+    }
+
+    // Upper bound of the first latency bucket, in nanoseconds
+    private static final long FIRST_BUCKET_NANOS = 1000;
+
+    // Latency buckets for each doubling, and number of buckets (the last one holds anything above 12 days)
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int BUCKET_COUNT = BUCKETS_PER_DOUBLING * 40 + 1;
+
+    // Unique instance
+    private static final ValidationMetrics instance = new ValidationMetrics();
+
+    // Counters
+    private final AtomicLong validations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong reportCount = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicInteger peakRetainedReports = new AtomicInteger();
+
+    // Reports emitted for each rule, in RULE_NAMES order
+    private final AtomicLongArray ruleReports = new AtomicLongArray(RULE_NAMES.length);
+
+    // Latencies of the completed validations: histogram, total and maximum, in nanoseconds
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maximumLatency = new AtomicLong();
+
+    // Time of the last reset, in nanoseconds
+    private volatile long resetTime = System.nanoTime();
+
+    /**
+     * Instance's access method.<br>
+     * @return
+     */
+    public static ValidationMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, if they are not registered yet.<br>
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static synchronized void register() throws JMException {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+
+        if (!server.isRegistered(name)) {
+            server.registerMBean(instance, name);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they are registered.<br>
+     * @throws JMException if the MBean cannot be unregistered
+     */
+    public static synchronized void unregister() throws JMException {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Records a completed validation.<br>
+     * @param nanos latency of the validation
+     * @param reports reports emitted by the validation
+     * @param retainedReports reports retained by the engine at the end of the validation
+     */
+    void recordValidation(long nanos, List<Report> reports, int retainedReports) {
+
+        validations.incrementAndGet();
+
+        latencyBuckets.incrementAndGet(getBucket(nanos));
+        totalLatency.addAndGet(nanos);
+        for (long max = maximumLatency.get(); nanos > max && !maximumLatency.compareAndSet(max, nanos); max = maximumLatency.get()) {
+            // Retry until the maximum is not lower than the latency
+        }
+
+        reportCount.addAndGet(reports.size());
+        for (Report report : reports) {
+            ruleReports.incrementAndGet(getRuleIndex(report.getRule()));
+        }
+
+        for (int peak = peakRetainedReports.get(); retainedReports > peak
+                && !peakRetainedReports.compareAndSet(peak, retainedReports); peak = peakRetainedReports.get()) {
+            // Retry until the peak is not lower than the retained reports
+        }
+    }
+
+    /**
+     * Records a failed validation.<br>
+     */
+    void recordFailure() {
+        validations.incrementAndGet();
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Records a lookup of the result cache.<br>
+     * @param hit <code>true</code> if the reports have been found
+     */
+    void recordCacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the index in <code>RULE_NAMES</code> of the given rule.<br>
+     * @param rule the rule of a report
+     * @return the index of the rule, the one of "other" if the rule is unknown
+     */
+    private static int getRuleIndex(String rule) {
+        Integer index = RULE_INDEXES.get(rule);
+        return (index != null) ? index.intValue() : RULE_NAMES.length - 1;
+    }
+
+    /**
+     * Returns the histogram bucket of the given latency.<br>
+     */
+    private static int getBucket(long nanos) {
+
+        if (nanos <= FIRST_BUCKET_NANOS) {
+            return 0;
+        }
+
+        int bucket = (int) Math.ceil(BUCKETS_PER_DOUBLING * Math.log((double) nanos / FIRST_BUCKET_NANOS) / Math.log(2));
+
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the completed validations falls, in milliseconds.<br>
+     * @param fraction the fraction, from 0 to 1
+     */
+    public double getLatencyPercentile(double fraction) {
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencyBuckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max((long) Math.ceil(fraction * total), 1);
+        long count = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= rank) {
+                // The upper bound of the bucket, not above the highest latency
+                double bound = FIRST_BUCKET_NANOS * Math.pow(2, (double) i / BUCKETS_PER_DOUBLING);
+                return Math.min(bound, maximumLatency.get()) / 1e6;
+            }
+        }
+
+        return maximumLatency.get() / 1e6;
+    }
+
+    public long getValidationCount() {
+        return validations.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public double getDocumentsPerSecond() {
+        double seconds = (System.nanoTime() - resetTime) / 1e9;
+        return (seconds > 0) ? validations.get() / seconds : 0;
+    }
+
+    public double getMeanLatency() {
+        long completed = validations.get() - failures.get();
+        return (completed > 0) ? totalLatency.get() / 1e6 / completed : 0;
+    }
+
+    public double getLatencyP50() {
+        return getLatencyPercentile(0.5);
+    }
+
+    public double getLatencyP99() {
+        return getLatencyPercentile(0.99);
+    }
+
+    public double getMaximumLatency() {
+        return maximumLatency.get() / 1e6;
+    }
+
+    public long getReportCount() {
+        return reportCount.get();
+    }
+
+    public String[] getReportsPerRule() {
+
+        String[] counts = new String[RULE_NAMES.length];
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = RULE_NAMES[i] + "=" + ruleReports.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of reports emitted for the given rule.<br>
+     * @param rule one of <code>RULE_NAMES</code>
+     * @return the number of reports, 0 if the rule is unknown
+     */
+    public long getReportCount(String rule) {
+        Integer index = RULE_INDEXES.get(rule);
+        return (index != null) ? ruleReports.get(index.intValue()) : 0;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long lookups = hits + cacheMisses.get();
+        return (lookups > 0) ? (double) hits / lookups : 0;
+    }
+
+    public int getPeakRetainedReports() {
+        return peakRetainedReports.get();
+    }
+
+    /**
+     * Sets all the metrics to 0. Validations running while the metrics are reset may be partially counted.<br>
+     */
+    public void reset() {
+
+        validations.set(0);
+        failures.set(0);
+        reportCount.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        peakRetainedReports.set(0);
+        totalLatency.set(0);
+        maximumLatency.set(0);
+
+        for (int i = 0; i < RULE_NAMES.length; i++) {
+            ruleReports.set(i, 0);
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            latencyBuckets.set(i, 0);
+        }
+
+        resetTime = System.nanoTime();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+/**
+ * Management interface of <code>ValidationMetrics</code>, registered in the platform MBean server under
+ * <code>ValidationMetrics.OBJECT_NAME</code>.<br>
+ * Latencies are in milliseconds, and all the values are measured since the last reset.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public interface ValidationMetricsMBean {
+
+    /**
+     * Returns the number of validations run, including the failed ones and the cache hits.<br>
+     */
+    long getValidationCount();
+
+    /**
+     * Returns the number of validations that failed (ie: the document cannot be parsed, or the validation
+     * has been canceled).<br>
+     */
+    long getFailureCount();
+
+    /**
+     * Returns the average number of validations per second.<br>
+     */
+    double getDocumentsPerSecond();
+
+    /**
+     * Returns the average latency of the completed validations.<br>
+     */
+    double getMeanLatency();
+
+    /**
+     * Returns the median latency of the completed validations.<br>
+     */
+    double getLatencyP50();
+
+    /**
+     * Returns the 99th percentile of the latency of the completed validations.<br>
+     */
+    double getLatencyP99();
+
+    /**
+     * Returns the highest latency of the completed validations.<br>
+     */
+    double getMaximumLatency();
+
+    /**
+     * Returns the number of reports emitted by all the validations.<br>
+     */
+    long getReportCount();
+
+    /**
+     * Returns the number of reports emitted for each rule, as <code>rule=count</code> strings.<br>
+     */
+    String[] getReportsPerRule();
+
+    /**
+     * Returns the number of validations whose reports have been found in the result cache.<br>
+     */
+    long getCacheHits();
+
+    /**
+     * Returns the number of validations whose reports have not been found in the result cache.<br>
+     */
+    long getCacheMisses();
+
+    /**
+     * Returns the fraction of the result cache lookups that found the reports, 0 if there are none.<br>
+     */
+    double getCacheHitRate();
+
+    /**
+     * Returns the highest number of reports retained by an engine at the end of a validation.<br>
+     */
+    int getPeakRetainedReports();
+
+    /**
+     * Sets all the metrics to 0.<br>
+     */
+    void reset();
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+/**
+ * Tells a running validation whether it must stop, because its result is no longer needed (ie: the
+ * document has been edited again while it was being validated).<br>
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public interface ValidationMonitor {
+
+    /**
+     * Returns <code>true</code> when the validation must stop as soon as possible.<br>
+     */
+    public boolean isCanceled();
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package it.pronetics.madstore.hatom.eclipse.validator;
+
+import static it.pronetics.madstore.hatom.eclipse.validator.HentryChildAnalyzer.HENTRY_CHILDREN;
+
+/**
+ * Time spent by the validations of an engine in each phase, measured with <code>System.nanoTime</code>, so
+ * that a slow document can be told parser-bound or rule-bound (see <code>ValidatorEngine.setTimings</code>).<br>
+ * <br>
+ * The phases of a streaming validation are interleaved, since the rules are applied while the parser reads
+ * the document: the index phase is the lookup of the hAtom keywords in the attributes of each element, the
+ * hfeed and hentry phases are the rules applied to the elements outside and inside the hentries, and the
+ * parse phase is what remains of the parse time. For DOM objects, the index phase is the creation of the
+ * <code>KeywordIndex</code>, and the hfeed and hentry phases are the time of <code>HfeedAnalyzer</code> and
+ * <code>HentryAnalyzer</code>. The rendering phase is recorded by whoever shows the reports.<br>
+ * <br>
+ * The time of each hentry child keyword is part of the hentry phase. Hentries validated in parallel add the
+ * time of all their threads, so the child times can exceed the hentry phase.<br>
+ * Timings add up over all the validations they are given to, and can be shared by several threads.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class ValidationTimings {
+
+    // Phases
+    public static final int PARSE = 0;
+    public static final int INDEX = 1;
+    public static final int HFEED = 2;
+    public static final int HENTRY = 3;
+    public static final int RENDERING = 4;
+
+    // Names of the phases, in constant order
+    public static final String[] PHASE_NAMES = { "parse", "index", "hfeed", "hentry", "rendering" };
+
+    // Nanoseconds spent in each phase
+    private long[] phaseTimes = new long[PHASE_NAMES.length];
+
+    // Nanoseconds spent in the rules of each hentry child keyword, in HENTRY_CHILDREN order
+    private long[] childTimes = new long[HENTRY_CHILDREN.length];
+
+    /**
+     * Adds the given time to a phase.<br>
+     * @param phase one of the phase constants
+     * @param nanos time in nanoseconds
+     */
+    public synchronized void add(int phase, long nanos) {
+        phaseTimes[phase] += nanos;
+    }
+
+    /**
+     * Adds the given time to the rules of an hentry child keyword.<br>
+     * @param child index of the keyword in <code>HentryChildAnalyzer.HENTRY_CHILDREN</code>
+     * @param nanos time in nanoseconds
+     */
+    synchronized void addChild(int child, long nanos) {
+        childTimes[child] += nanos;
+    }
+
+    /**
+     * Adds all the times of the given timings to these ones.<br>
+     * @param timings the timings to be added
+     */
+    public void add(ValidationTimings timings) {
+
+        long[] phases;
+        long[] children;
+
+        synchronized (timings) {
+            phases = timings.phaseTimes.clone();
+            children = timings.childTimes.clone();
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < phases.length; i++) {
+                phaseTimes[i] += phases[i];
+            }
+            for (int i = 0; i < children.length; i++) {
+                childTimes[i] += children[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the time spent in a phase.<br>
+     * @param phase one of the phase constants
+     * @return the time in nanoseconds
+     */
+    public synchronized long getTime(int phase) {
+        return phaseTimes[phase];
+    }
+
+    /**
+     * Returns the time spent in the rules of an hentry child keyword.<br>
+     * @param keyword one of <code>HentryChildAnalyzer.HENTRY_CHILDREN</code>
+     * @return the time in nanoseconds, 0 if the keyword is not an hentry child
+     */
+    public synchronized long getChildTime(String keyword) {
+
+        for (int i = 0; i < HENTRY_CHILDREN.length; i++) {
+            if (HENTRY_CHILDREN[i].equals(keyword)) {
+                return childTimes[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the time spent in all the phases.<br>
+     * @return the time in nanoseconds
+     */
+    public synchronized long getTotalTime() {
+
+        long total = 0;
+
+        for (int i = 0; i < phaseTimes.length; i++) {
+            total += phaseTimes[i];
+        }
+        return total;
+    }
+
+    /**
+     * Sets all the times to 0.<br>
+     */
+    public synchronized void reset() {
+        phaseTimes = new long[PHASE_NAMES.length];
+        childTimes = new long[HENTRY_CHILDREN.length];
+    }
+
+    /**
+     * Returns the phase times on the first line and the hentry child times on the second one, in milliseconds
+     * (ie: <code>parse 1.250 ms, index 0.310 ms, ...</code>).<br>
+     */
+    public synchronized String asString() {
+
+        StringBuffer buf = new StringBuffer();
+
+        for (int i = 0; i < phaseTimes.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(PHASE_NAMES[i]).append(' ').append(format(phaseTimes[i]));
+        }
+
+        buf.append("\nhentry children: ");
+
+        for (int i = 0; i < childTimes.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(HENTRY_CHILDREN[i]).append(' ').append(format(childTimes[i]));
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds.<br>
+     */
+    public static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+}
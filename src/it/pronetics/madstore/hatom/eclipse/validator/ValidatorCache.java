@@ -16,47 +16,63 @@
 
 package it.pronetics.madstore.hatom.eclipse.validator;
 
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Creates and stores the ValidationEngine objects.<br>
  * It also ensures that only one engine exist for every open document.<br>
+ * <br>
+ * Engines are keyed by the full path of their document, so that documents with the same name in different
+ * folders do not share their engine. The cache is bounded: when it is full, the engine of the least
+ * recently used document is removed. Editors remove the engine of their document when they are closed.<br>
+ * All the methods are thread safe.<br>
  * @author Andrea Castello
- * @version 1.1
+ * @version 1.2
  */
 public class ValidatorCache {
 
-    // Map of the negines: it associates a Netbeans document element to a different engine instance
-    private Map<String, ValidatorEngine> cache;
+    // Default maximum number of engines kept in the cache
+    public static final int DEFAULT_MAXIMUM_SIZE = 32;
 
     // Unique instance of the cache.
-    private static ValidatorCache instance;
+    private static final ValidatorCache instance = new ValidatorCache();
+
+    // Map of the engines, keyed by document path, in access order: the first one is the least recently used
+    private Map<String, ValidatorEngine> cache;
+
+    // Maximum number of engines kept in the cache
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
 
     // Creates an instance of the cache an initializes the map where
     // validation engines are stored
     private ValidatorCache() {
-        cache = new HashMap<String, ValidatorEngine>();
+        cache = new LinkedHashMap<String, ValidatorEngine>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ValidatorEngine> eldest) {
+                return size() > maximumSize;
+            }
+        };
     }
 
     /**
      * Instance's access method.<br>
      * @return
      */
-    public static synchronized ValidatorCache getInstance() {
-        if (instance == null) {
-            instance = new ValidatorCache();
-        }
-
+    public static ValidatorCache getInstance() {
         return instance;
     }
 
     /**
      * Retrieves the engine instance associated with the given <code>documentName</code>.<br>
-     * @param documentName the document name associates with an engine instance
+     * @param documentName the full path of the document, associated with an engine instance
      * @return Validation engine for the given <code>documentName</code>
      */
-    public ValidatorEngine getEngine(String documentName) {
+    public synchronized ValidatorEngine getEngine(String documentName) {
 
         ValidatorEngine engine = cache.get(documentName);
         if (engine == null) {
@@ -69,11 +85,11 @@ public class ValidatorCache {
 
     /**
      * Creates a validation engine for the document named <code>documentName</code> and stores it in the
-     * cache.<br>
-     * @param documentName Name of the document for which engine will be created.
+     * cache, replacing the previous one. If the cache is full, the least recently used engine is removed.<br>
+     * @param documentName Full path of the document for which engine will be created.
      * @return The newly created validation engine.
      */
-    public ValidatorEngine createEngine(String documentName) {
+    public synchronized ValidatorEngine createEngine(String documentName) {
 
         ValidatorEngine engine = new ValidatorEngine();
         engine.setDocumentName(documentName);
@@ -84,11 +100,47 @@ public class ValidatorCache {
 
     /**
      * Removes from cache the engine object identified by the <code>documentName</code> key.<br>
-     * @param documentName Name of the document for which engine will be created.
+     * @param documentName Full path of the document whose engine must be removed.
      * @return the validation engine that has been just removed form cache.
      */
-    public ValidatorEngine remove(String documentName) {
+    public synchronized ValidatorEngine remove(String documentName) {
         return cache.remove(documentName);
     }
 
+    /**
+     * Returns the number of engines in the cache.<br>
+     * @return
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the maximum number of engines kept in the cache.<br>
+     * @return
+     */
+    public synchronized int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of engines kept in the cache, removing the least recently used engines that
+     * exceed it.<br>
+     * @param maximumSize the maximum size, at least 1
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maximumSize);
+        }
+
+        this.maximumSize = maximumSize;
+
+        Iterator<String> keys = cache.keySet().iterator();
+        while (cache.size() > maximumSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
 }
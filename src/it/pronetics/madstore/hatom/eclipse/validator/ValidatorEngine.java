@@ -19,25 +19,46 @@ package it.pronetics.madstore.hatom.eclipse.validator;
 import static it.pronetics.madstore.hatom.eclipse.validator.BaseAnalyzer.HATOM_HENTRY_ATTRIBUTES;
 import static it.pronetics.madstore.hatom.eclipse.validator.HentryChildAnalyzer.HENTRY_CHILDREN;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.text.BadLocationException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.traversal.NodeIterator;
+import org.xml.sax.InputSource;
 
 /**
  * Handler for rule validation tasks.<br>
+ * <br>
+ * The number of reports can be limited with <code>setMaximumReports</code>, or with
+ * <code>setFailFast</code> when only the first error is needed: validation stops as soon as the limit is
+ * reached. With <code>setMergeDuplicates</code>, identical reports are kept once with their occurrence count.<br>
+ * <br>
+ * The results of the validation of byte streams and files can be cached with <code>setResultCache</code>, so
+ * that unchanged documents are neither parsed nor validated again.<br>
+ * <br>
+ * The time spent in each validation phase is recorded when timings are given with <code>setTimings</code>.
+ * Every document validation is also recorded by the <code>ValidationMetrics</code> of the JVM.<br>
  * 
  * @author Andrea Castello
- * @version 1.6
+ * @version 1.19
  */
-public class ValidatorEngine {
+public class ValidatorEngine implements ReportSink {
      
     // List of hAtom keywords: they're widely used in the whole validation process
     public final static String[] ALL_KEYWORDS;// = Arrays.copyOf( HENTRY_CHILDREN, HATOM_HENTRY_ATTRIBUTES.size() + 3);
@@ -65,8 +86,29 @@ public class ValidatorEngine {
     // Name of the document open in the IDE, that will be validated by this engine
     private String documentName = "";
     
-    // DOM object that represents the document to be validated
-    private Document xhtmlDoc;
+    // Tells a running streaming validation whether it must stop, can be null
+    private ValidationMonitor monitor;
+    
+    // If true, the hentries of DOM objects are validated in parallel
+    private boolean parallel = false;
+    
+    // Maximum number of reports, 0 if there's no limit
+    private int maximumReports = 0;
+    
+    // If true, validation stops at the first report
+    private boolean failFast = false;
+    
+    // If true, identical reports are kept once, with their occurrence count
+    private boolean mergeDuplicates = false;
+    
+    // Index in the report list of each distinct report, by duplicate key, when duplicates are merged
+    private Map<String, Integer> reportIndexes = new HashMap<String, Integer>();
+    
+    // Cache of the results of byte stream validations, can be null
+    private ResultCache resultCache;
+    
+    // Time spent in each validation phase, null if it's not recorded
+    private ValidationTimings timings;
 
     /**
      * Creates a new engine instance and initialized its internal report list.<br>
@@ -78,9 +120,10 @@ public class ValidatorEngine {
     /**
      * Checks and reports invalid hfeed attributes that are placed outside hfeed elements.
      * @param node Node to be checked
-     * @param keyword hatom keyword to be checked
+     * @param keywordMask mask of the hatom keywords to be checked (see <code>KeywordIndex</code>)
+     * @param sink sink of the reports
      */
-    private static void checkInvalidHatomAttributes(Node node, String keyword, String docName) {
+    private static void checkInvalidHatomAttributes(Node node, int keywordMask, ReportSink sink) {
         
         if (node != null) {
            
@@ -92,7 +135,7 @@ public class ValidatorEngine {
                     
                     Node child = nnmap.item(i);
                     
-                    checkInvalidAttribute(node, child, keyword, docName);
+                    checkInvalidAttribute(node, child, keywordMask, sink);
                 }
             }
         }
@@ -100,17 +143,16 @@ public class ValidatorEngine {
     
     /**
      * Convenience method used inside <code>checkInvalidHatomAttributes</code> method.
-     * It creates an error report if the hAtom <code>keyword</code> is found inside the
-     * given <code>node</code>.
-     * <br>
-     * Note that the <code>docName</code> is just used for reporting purposes.<br>
+     * It creates an error report for each of the hAtom keywords in <code>keywordMask</code> that is found
+     * inside the given <code>node</code>. The attribute value is tokenized only once, whatever the number of
+     * keywords.<br>
      * 
      * @param parent Parent node of the node that we have to analyze
      * @param child Node to be analyzed
-     * @param keyword hatom keyword that must be checked for the given node
-     * @param docName the document's name
+     * @param keywordMask mask of the hatom keywords that must be checked for the given node
+     * @param sink sink of the reports
      */
-    private static void checkInvalidAttribute(Node parent, Node child, String keyword, String docName ) {
+    private static void checkInvalidAttribute(Node parent, Node child, int keywordMask, ReportSink sink) {
     	
     	Report report;
     	String nodeValue;
@@ -120,9 +162,13 @@ public class ValidatorEngine {
             
             nodeValue = child.getNodeValue();
             
-            if (nodeValue != null && XMLUtils.attributeValueMatches(nodeValue, keyword)) {
+            // One report for each matching keyword
+            int matches = Integer.bitCount(KeywordIndex.getKeywordMask(nodeValue) & keywordMask);
+            
+            for (int i = 0; i < matches; i++) {
                 
                 report = new Report();
+                report.setRule(Report.RULE_INVALID_POSITION);
                 report.setNode(parent);
                 
                 StringBuffer message = new StringBuffer("Attribute ").append(child.getNodeName());
@@ -130,8 +176,7 @@ public class ValidatorEngine {
                         message.append("Please check that node is inside his regular parent node \n");
                         
                 report.setMessage(message.toString());
-                ValidatorEngine engine = ValidatorCache.getInstance().getEngine(docName); 
-                engine.addReport(report);
+                sink.addReport(report);
                 
             }
         }
@@ -148,28 +193,332 @@ public class ValidatorEngine {
     
     /**
      * Adds a new report object to the report list.<br>
+     * If duplicates are merged and an identical report is already in the list, that report is replaced by
+     * one that also counts the new occurrence. Once the report limit has been reached, new reports are
+     * discarded.<br>
      * @param report A report object.
      */
     public void addReport(Report report){
-       reports.add(report); 
+        
+        if (mergeDuplicates) {
+            
+            String key = report.getDuplicateKey();
+            Integer index = reportIndexes.get(key);
+            
+            if (index != null) {
+                reports.set(index, reports.get(index).merge(report));
+                return;
+            }
+            if (isFull()) {
+                return;
+            }
+            reportIndexes.put(key, reports.size());
+            
+        } else if (isFull()) {
+            return;
+        }
+        
+        reports.add(report); 
     }
     
     /**
-     * Performs validation on a DOM object which is obtained from Netbeans' <code>StyleDocument</code>.
+     * Check whether the report limit has been reached: the validation stops as soon as possible, and
+     * reports found afterwards are discarded, so the document may contain further errors.<br>
+     * @return <code>true</code> if the engine accepts no more reports
+     */
+    public boolean isFull() {
+        int limit = failFast ? 1 : maximumReports;
+        return limit > 0 && reports.size() >= limit;
+    }
+    
+    /**
+     * Performs validation of the given XHTML document.<br>
+     * The document is not converted into a DOM object: all the rules are applied by a
+     * <code>StreamingValidator</code> in a single pass over the document.<br>
      * 
-     * @param doc Netbeans StyedDocument that must be converted into a DOM object
+     * @param stringDoc the XHTML document
      * @throws BadLocationException in case the styledDocument cannot return the document as string
-     * @throws IOException in case Document object creation fails.
+     * @throws IOException in case the document cannot be parsed.
      */
     public void validate(String  stringDoc) throws BadLocationException, IOException {
         
-        this.xhtmlDoc = XMLUtils.getDocument(new ByteArrayInputStream( stringDoc.getBytes() ));
+        validate(new StringReader(stringDoc));
+        
+    }
+    
+    /**
+     * Performs validation of the given XHTML document, reading its characters directly from the sequence.<br>
+     * 
+     * @param chars the XHTML document
+     * @throws IOException in case the document cannot be parsed.
+     */
+    public void validate(CharSequence chars) throws IOException {
+        
+        validate(new CharSequenceReader(chars));
+        
+    }
+    
+    /**
+     * Performs validation of the XHTML document read from the given character stream.<br>
+     * The reports know the position of their element in the document (see <code>Report.getOffset</code>).
+     * The reader is not closed.<br>
+     * 
+     * @param reader the XHTML document
+     * @throws IOException in case the document cannot be read or parsed.
+     */
+    public void validate(Reader reader) throws IOException {
+        
+        PositionReader positions = new PositionReader(reader);
+        validate(new InputSource(positions), positions);
+        
+    }
+    
+    /**
+     * Performs validation of the XHTML document read from the given byte stream.<br>
+     * The document encoding is detected from its byte order mark and XML declaration. The stream is not closed.<br>
+     * The characters are decoded by the parser, so the position of the reports in the document is unknown.<br>
+     * 
+     * @param is the XHTML document
+     * @throws IOException in case the document cannot be read or parsed.
+     */
+    public void validate(InputStream is) throws IOException {
+        
+        if (resultCache != null) {
+            validateCached(ResultCache.readAll(is), null, null);
+            return;
+        }
+        
+        validate(new InputSource(new BufferedInputStream(is)), null);
+    }
+    
+    /**
+     * Performs validation of the XHTML document read from the given byte stream, whose encoding is known
+     * (ie: the encoding of a workspace file).<br>
+     * The characters are decoded by the engine, so the reports know the position of their element in the
+     * document. The stream is not closed.<br>
+     * 
+     * @param is the XHTML document
+     * @param encoding the document encoding
+     * @throws IOException in case the document cannot be read or parsed.
+     */
+    public void validate(InputStream is, String encoding) throws IOException {
+        
+        if (resultCache != null) {
+            validateCached(ResultCache.readAll(is), encoding, null);
+        } else {
+            validate(new InputStreamReader(is, encoding));
+        }
+    }
+    
+    /**
+     * Performs validation of the given XHTML file.<br>
+     * The document encoding is detected from its byte order mark and XML declaration; relative DTD references
+     * are resolved against the file location. As for byte streams, the position of the reports is unknown.<br>
+     * 
+     * @param file the XHTML file
+     * @throws IOException in case the file cannot be read or parsed.
+     */
+    public void validate(File file) throws IOException {
+        
+        InputStream is = new FileInputStream(file);
+        
+        try {
+            if (resultCache != null) {
+                validateCached(ResultCache.readAll(is), null, file.toURI().toString());
+            } else {
+                InputSource source = new InputSource(is);
+                source.setSystemId(file.toURI().toString());
+                validate(source, null);
+            }
+        } finally {
+            is.close();
+        }
+    }
+    
+    /**
+     * Adds the cached reports of the given document, or validates it and caches its reports.<br>
+     * @param document the document bytes
+     * @param encoding the document encoding, null if it must be detected by the parser
+     * @param systemId the document location, can be null
+     */
+    private void validateCached(byte[] document, String encoding, String systemId) throws IOException {
+        
+        // Options that change the reports are part of the key
+        String variant = encoding + "|" + maximumReports + "|" + failFast + "|" + mergeDuplicates;
+        long start = System.nanoTime();
+        int first = reports.size();
+        List<Report> cached = resultCache.get(document, variant);
+        
+        if (cached != null) {
+            for (Report report : cached) {
+                addReport(report);
+            }
+            recordValidation(start, first);
+            return;
+        }
+        
+        // The reports of this engine would stop or merge the new ones, so the document is validated alone
+        ValidatorEngine scratch = createScratchEngine();
+        InputStream is = new ByteArrayInputStream(document);
+        
+        if (encoding != null) {
+            scratch.validate(new InputStreamReader(is, encoding));
+        } else {
+            InputSource source = new InputSource(is);
+            source.setSystemId(systemId);
+            scratch.validate(source, null);
+        }
+        
+        // Canceled and failed validations have thrown an exception, and are not cached
+        resultCache.put(document, variant, scratch.getReports());
+        
+        for (Report report : scratch.getReports()) {
+            addReport(report);
+        }
+    }
+    
+    /**
+     * Creates an empty engine with the options, monitor and timings of this one, whose reports depend only
+     * on the document it validates.<br>
+     */
+    private ValidatorEngine createScratchEngine() {
+        
+        ValidatorEngine scratch = new ValidatorEngine();
+        scratch.setDocumentName(documentName);
+        scratch.setMonitor(monitor);
+        scratch.setParallel(parallel);
+        scratch.setMaximumReports(maximumReports);
+        scratch.setFailFast(failFast);
+        scratch.setMergeDuplicates(mergeDuplicates);
+        scratch.setTimings(timings);
+        
+        return scratch;
+    }
+    
+    /**
+     * Streams the given source through a <code>StreamingValidator</code>.<br>
+     * @param positions the reader of the source, if report positions must be recorded, null otherwise
+     */
+    private void validate(InputSource source, PositionReader positions) throws IOException {
+        
+        StreamingValidator validator = new StreamingValidator(this);
+        validator.setPositionReader(positions);
+        
+        long start = System.nanoTime();
+        int first = reports.size();
+        
+        try {
+            parse(source, validator);
+        } catch (IOException e) {
+            checkStopped(e);
+        }
+        
+        recordValidation(start, first);
+    }
+    
+    /**
+     * Records a completed validation in the metrics of the JVM.<br>
+     * @param start start of the validation, as given by <code>System.nanoTime</code>
+     * @param first index of the first report of the validation
+     */
+    void recordValidation(long start, int first) {
+        ValidationMetrics.getInstance().recordValidation(System.nanoTime() - start, reports.subList(first, reports.size()), reports.size());
+    }
+    
+    /**
+     * Parses the given source with a streaming validator, adding the time of each phase to the timings of
+     * this engine, if any.<br>
+     * @param source the document
+     * @param validator the validator
+     * @throws IOException in case the document cannot be parsed, or the validation has been stopped
+     */
+    void parse(InputSource source, StreamingValidator validator) throws IOException {
+        
+        if (timings == null) {
+            XMLUtils.parse(source, validator);
+            return;
+        }
+        
+        long start = System.nanoTime();
+        
+        try {
+            XMLUtils.parse(source, validator);
+        } finally {
+            // The parser time is what is left when the rules have been taken away
+            ValidationTimings ruleTimings = validator.getTimings();
+            timings.add(ruleTimings);
+            timings.add(ValidationTimings.PARSE, System.nanoTime() - start - ruleTimings.getTotalTime());
+        }
+    }
+    
+    /**
+     * Rethrows the exception of a streaming validation, unless the validation has been stopped because the
+     * report limit has been reached.<br>
+     */
+    private void checkStopped(IOException e) throws IOException {
+        
+        if (!isFull()) {
+            ValidationMetrics.getInstance().recordFailure();
+            throw e;
+        }
+    }
+    
+    /**
+     * Performs validation on a DOM object that has already been created, using the hfeed
+     * and hentry analyzers.<br>
+     * The document must not be modified during validation, since in parallel mode it is read by
+     * several threads.<br>
+     * 
+     * @param doc the DOM object representing the XHTML document
+     * @throws IOException in case the analysis fails.
+     */
+    public void validate(Document doc) throws IOException {
+        
+        long start = System.nanoTime();
+        int first = reports.size();
         
+        // The document is not kept by the engine, nor by its reports, so it can be released after validation
         HfeedAnalyzer analyzer = new HfeedAnalyzer();
-        analyzer.init(xhtmlDoc);
+        analyzer.init(doc);
         analyzer.setDocumentName(this.documentName);
-        analyzer.analyze();
+        analyzer.setReportSink(this);
+        analyzer.setParallel(parallel);
+        analyzer.setTimings(timings);
         
+        try {
+            analyze(analyzer, start);
+        } catch (IOException e) {
+            ValidationMetrics.getInstance().recordFailure();
+            throw e;
+        }
+        
+        recordValidation(start, first);
+    }
+    
+    /**
+     * Runs the analysis of a DOM object, adding its index, hfeed and hentry time to the timings, if any.<br>
+     * @param analyzer the analyzer of the DOM object
+     * @param start start of the validation, when the index has been created
+     */
+    private void analyze(HfeedAnalyzer analyzer, long start) throws IOException {
+        
+        if (timings == null) {
+            analyzer.analyze();
+            return;
+        }
+        
+        // The hfeed time is what is left when the hentry analysis has been taken away
+        long analysisStart = System.nanoTime();
+        long hentryTime = timings.getTime(ValidationTimings.HENTRY);
+        
+        timings.add(ValidationTimings.INDEX, analysisStart - start);
+        
+        try {
+            analyzer.analyze();
+        } finally {
+            timings.add(ValidationTimings.HFEED, System.nanoTime() - analysisStart
+                    - (timings.getTime(ValidationTimings.HENTRY) - hentryTime));
+        }
     }
  
     /**
@@ -179,12 +528,11 @@ public class ValidatorEngine {
      */
     public static void analyzeUnmatchingNodes(Document doc, List<Node> unmatchingNodes, String documentName, String[] targetKeywords){
         
-        for (int i=0; i<targetKeywords.length; i++){
-            
-            for(Node node: unmatchingNodes){
-                checkInvalidHatomAttributes(node, targetKeywords[i], documentName);
-            }
-            
+        int keywordMask = KeywordIndex.getKeywordMask(targetKeywords);
+        ReportSink sink = ValidatorCache.getInstance().getEngine(documentName);
+        
+        for(Node node: unmatchingNodes){
+            checkInvalidHatomAttributes(node, keywordMask, sink);
         }
     }
     
@@ -192,25 +540,177 @@ public class ValidatorEngine {
      * Searches for hAtom keywords that can be found outside their valid position (ie: a hentry is found outside
      * a hfeed element).<br> 
      * 
-     * @param doc the whole DOM object representing the XHTML document; it is used to create a node iterator
-     * @param rootNode node that will be the root under which iterator will be built.
+     * @param doc the whole DOM object representing the XHTML document
+     * @param rootNode node that will be the root under which search is performed.
      * @param docName the name of the document opened in the IDE
      */
     public static void analyzeUnmatchingNodes(Document doc, Node rootNode, String docName, String[] targetKeywords){
         
-        NodeIterator iterator = XMLUtils.getNodeIterator(doc, rootNode);
+        analyzeUnmatchingNodes(doc, rootNode, new ArrayList<Node>(), docName, targetKeywords);
+    }
+    
+    /**
+     * Searches for hAtom keywords that can be found outside their valid position (ie: a hentry is found outside
+     * a hfeed element), skipping the subtrees of the given nodes, where those keywords are allowed.<br> 
+     * 
+     * @param doc the whole DOM object representing the XHTML document
+     * @param rootNode node that will be the root under which search is performed.
+     * @param excludedNodes nodes whose subtrees must not be searched (ie: the hfeed nodes)
+     * @param docName the name of the document opened in the IDE
+     */
+    public static void analyzeUnmatchingNodes(Document doc, Node rootNode, List<Node> excludedNodes, String docName, String[] targetKeywords){
         
-        for (int i=0; i<targetKeywords.length; i++){
-            Node node;
-            while((node = iterator.nextNode() ) != null){
-                checkInvalidHatomAttributes(node, targetKeywords[i], docName);
+        analyzeUnmatchingNodes(rootNode, new HashSet<Node>(excludedNodes), ValidatorCache.getInstance().getEngine(docName), KeywordIndex.getKeywordMask(targetKeywords));
+    }
+    
+    /**
+     * Searches for hAtom keywords that can be found outside their valid position, skipping the subtrees of the
+     * given nodes.<br>
+     * All the keywords are searched at once, with a single walk of the subtree.<br>
+     * 
+     * @param rootNode node that will be the root under which search is performed.
+     * @param excludedNodes nodes whose subtrees must not be searched (ie: the hfeed nodes)
+     * @param sink sink of the reports
+     * @param keywordMask mask of the hAtom keywords to be searched (see <code>KeywordIndex</code>)
+     */
+    public static void analyzeUnmatchingNodes(Node rootNode, Set<Node> excludedNodes, ReportSink sink, int keywordMask){
+        
+        for (Node node : XMLUtils.getSubtreeNodes(rootNode, excludedNodes)){
+            if (sink.isFull()) {
+                return;
             }
-            
-            // Bring iterator back to first node
-            while (( node = iterator.previousNode())!=null){}
+            checkInvalidHatomAttributes(node, keywordMask, sink);
         }
-        
-        iterator.detach();
+    }
+
+    /**
+     * Returns the monitor of the validations performed by this engine, if any.<br>
+     * @return
+     */
+    public ValidationMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Sets the monitor that can stop the streaming validations performed by this engine. When a validation
+     * is stopped, it fails with an IOException and <code>isCanceled</code> returns <code>true</code>.<br>
+     * @param monitor the monitor, or null
+     */
+    public void setMonitor(ValidationMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Check whether the current validation must stop.<br>
+     * @return <code>true</code> if the monitor has canceled the validation, <code>false</code> otherwise
+     */
+    public boolean isCanceled() {
+        return monitor != null && monitor.isCanceled();
+    }
+
+    /**
+     * Returns <code>true</code> if the hentries of DOM objects are validated in parallel.<br>
+     * @return
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Enables or disables the parallel validation of the hentries of DOM objects (see
+     * <code>HentryAnalyzer</code>). Reports are the same, in the same order, of a sequential validation.<br>
+     * @param parallel <code>true</code> to validate hentries in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Returns the maximum number of reports, 0 if there's no limit.<br>
+     * @return
+     */
+    public int getMaximumReports() {
+        return maximumReports;
+    }
+
+    /**
+     * Sets the maximum number of reports: validation stops when it is reached (see <code>isFull</code>).<br>
+     * @param maximumReports the maximum number of reports, 0 for no limit
+     */
+    public void setMaximumReports(int maximumReports) {
+        if (maximumReports < 0) {
+            throw new IllegalArgumentException("Maximum number of reports cannot be negative: " + maximumReports);
+        }
+        this.maximumReports = maximumReports;
+    }
+
+    /**
+     * Returns <code>true</code> if validation stops at the first report.<br>
+     * @return
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * Enables or disables the first-error mode, where validation stops at the first report: the document is
+     * valid if, and only if, there are no reports. It overrides the maximum number of reports.<br>
+     * @param failFast <code>true</code> to stop at the first report
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Returns <code>true</code> if identical reports are kept once, with their occurrence count.<br>
+     * @return
+     */
+    public boolean isMergeDuplicates() {
+        return mergeDuplicates;
+    }
+
+    /**
+     * Enables or disables the merging of identical reports: reports with the same message, element name and
+     * attributes are kept once, at the position of the first one, and <code>Report.getOccurrences</code>
+     * tells how many have been found. Merged reports count once towards the maximum number of reports.<br>
+     * @param mergeDuplicates <code>true</code> to merge identical reports
+     */
+    public void setMergeDuplicates(boolean mergeDuplicates) {
+        this.mergeDuplicates = mergeDuplicates;
+    }
+
+    /**
+     * Returns the cache of the results of byte stream validations, if any.<br>
+     * @return
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache of the results of the validations of byte streams and files: cached documents are
+     * neither parsed nor validated. Validations of characters and DOM objects are not cached.<br>
+     * @param resultCache the cache, or null
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Returns the timings of the validations performed by this engine, if any.<br>
+     * @return
+     */
+    public ValidationTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Sets the timings where the time spent in each phase of the validations is added. Recording the
+     * timings makes the validation a little slower, so there are none by default.<br>
+     * @param timings the timings, or null
+     */
+    public void setTimings(ValidationTimings timings) {
+        this.timings = timings;
     }
 
     /**
@@ -16,19 +16,19 @@
 
 package it.pronetics.madstore.hatom.eclipse.validator;
 
-import it.pronetics.madstore.hatom.eclipse.HatomActivator;
-
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.eclipse.core.runtime.Status;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -36,16 +36,37 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.traversal.DocumentTraversal;
 import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.NodeIterator;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Provides utility methods for working with XML files using DOM classes.<br>
  *
+ * Parsers are created once for each thread and reset after each use. They all have the same, fixed
+ * configuration:<br>
+ * <li> non validating and not namespace aware
+ * <li> whitespace in element content is ignored by DOM documents
+ * <li> external DTDs are still loaded, so the XHTML entities are resolved
+ * <li> DOM nodes are not expanded lazily, so documents can be read by several threads at once<br>
+ * The class does not depend on the Eclipse platform, so documents can also be validated outside the IDE.<br>
+ *
  * @author  Andrea Castello.
- * @version 1.1
+ * @version 1.4
  */
 public class XMLUtils {
     
+    // Xerces feature that builds DOM nodes only when they are first read, modifying the document
+    private static final String FEATURE_DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+    
+    // Parser factories. Factories are not thread safe, so they are only used by synchronized methods.
+    private static DocumentBuilderFactory builderFactory;
+    private static SAXParserFactory parserFactory;
+    
+    // Parsers of the current thread
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<DocumentBuilder>();
+    private static final ThreadLocal<SAXParser> SAX_PARSERS = new ThreadLocal<SAXParser>();
+    
     /** 
      * Since XMLUtils provides just static utility methods, no class instances
      * are allowed.<br>
@@ -64,19 +85,14 @@ public class XMLUtils {
      */
     public static Document newDocument(String base) throws IOException {
         Document document = null;
-        DocumentBuilderFactory builderFact = DocumentBuilderFactory
-                .newInstance();
         DocumentBuilder docBuilder;
         try {
-            docBuilder = builderFact.newDocumentBuilder();
+            docBuilder = getDocumentBuilder();
             document = docBuilder.newDocument();
             Element root = document.createElement(base);
             document.appendChild(root);
         } catch (ParserConfigurationException e) {
-        	Status status = new Status(Status.ERROR, HatomActivator.PLUGIN_ID, 
-        			"XmlUtil.createDocument()" + e.getMessage(), e);
-            HatomActivator.getDefault().getLog().log(status);
-            
+            throw new IOException("XmlUtil.createDocument()" + e.getMessage());
         }
         return document;
     }
@@ -93,14 +109,14 @@ public class XMLUtils {
         BufferedInputStream bis = new BufferedInputStream(is);
          
         Document document = null;
-        DocumentBuilderFactory builderFact = DocumentBuilderFactory
-                .newInstance();
-        builderFact.setValidating(false);
-        builderFact.setIgnoringElementContentWhitespace(true);
         DocumentBuilder docBuilder;
         try {
-            docBuilder = builderFact.newDocumentBuilder();
-            document = docBuilder.parse(bis);
+            docBuilder = getDocumentBuilder();
+            try {
+                document = docBuilder.parse(bis);
+            } finally {
+                release(docBuilder);
+            }
         } catch (ParserConfigurationException e) {
             throw new IOException(e.getMessage());
         } catch (SAXException se) {
@@ -109,6 +125,138 @@ public class XMLUtils {
         return document;
     }    
 
+    /**
+     * Parses the given InputStream with a SAX parser, sending the parsing events to the given handler.<br>
+     * The parser has the same configuration used by <code>getDocument</code>.<br>
+     * 
+     * @param is Stream of the XML file that have to be parsed
+     * @param handler the SAX handler
+     * @throws IOException in case a file reading or parsing problem occurs.
+     */
+    public static void parse(InputStream is, DefaultHandler handler) throws IOException {
+        
+        parse(new InputSource(new BufferedInputStream(is)), handler);
+    }
+
+    /**
+     * Parses the given input source with a SAX parser, sending the parsing events to the given handler.<br>
+     * When the source is a byte stream, its encoding is detected by the parser (byte order mark and XML
+     * declaration), unless the source declares it. When the source is a character stream, its characters are
+     * parsed as they are.<br>
+     * 
+     * @param source the XML document that has to be parsed
+     * @param handler the SAX handler
+     * @throws IOException in case a file reading or parsing problem occurs.
+     */
+    public static void parse(InputSource source, DefaultHandler handler) throws IOException {
+        
+        try {
+            SAXParser parser = getSAXParser();
+            try {
+                parser.parse(source, handler);
+            } finally {
+                release(parser);
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e.getMessage());
+        } catch (SAXException se) {
+            throw new IOException(se.getMessage());
+        }
+    }
+
+    /**
+     * Returns the DOM parser of the current thread, creating it the first time.<br>
+     * @return the parser
+     * @throws ParserConfigurationException in case the parser cannot be created
+     */
+    private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        
+        DocumentBuilder docBuilder = DOCUMENT_BUILDERS.get();
+        
+        if (docBuilder == null) {
+            docBuilder = newDocumentBuilder();
+            DOCUMENT_BUILDERS.set(docBuilder);
+        }
+        
+        return docBuilder;
+    }
+    
+    /**
+     * Creates a new DOM parser.<br>
+     */
+    private static synchronized DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        
+        if (builderFactory == null) {
+            builderFactory = DocumentBuilderFactory.newInstance();
+            builderFactory.setValidating(false);
+            builderFactory.setNamespaceAware(false);
+            builderFactory.setIgnoringElementContentWhitespace(true);
+            try {
+                builderFactory.setFeature(FEATURE_DEFER_NODE_EXPANSION, false);
+            } catch (ParserConfigurationException e) {
+                // Not a Xerces parser, that never defers node expansion
+            }
+        }
+        
+        return builderFactory.newDocumentBuilder();
+    }
+    
+    /**
+     * Returns the SAX parser of the current thread, creating it the first time.<br>
+     * @return the parser
+     * @throws ParserConfigurationException in case the parser cannot be created
+     * @throws SAXException in case the parser cannot be created
+     */
+    private static SAXParser getSAXParser() throws ParserConfigurationException, SAXException {
+        
+        SAXParser parser = SAX_PARSERS.get();
+        
+        if (parser == null) {
+            parser = newSAXParser();
+            SAX_PARSERS.set(parser);
+        }
+        
+        return parser;
+    }
+    
+    /**
+     * Creates a new SAX parser.<br>
+     */
+    private static synchronized SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
+        
+        if (parserFactory == null) {
+            parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setValidating(false);
+            parserFactory.setNamespaceAware(false);
+        }
+        
+        return parserFactory.newSAXParser();
+    }
+    
+    /**
+     * Resets the DOM parser after its use, so that it does not keep any reference to the parsed document.
+     * Parsers that cannot be reset are not reused.<br>
+     */
+    private static void release(DocumentBuilder docBuilder) {
+        try {
+            docBuilder.reset();
+        } catch (UnsupportedOperationException e) {
+            DOCUMENT_BUILDERS.remove();
+        }
+    }
+    
+    /**
+     * Resets the SAX parser after its use, so that it does not keep any reference to the handler.
+     * Parsers that cannot be reset are not reused.<br>
+     */
+    private static void release(SAXParser parser) {
+        try {
+            parser.reset();
+        } catch (UnsupportedOperationException e) {
+            SAX_PARSERS.remove();
+        }
+    }
+
     /**
      * Gets a node's text value given its parent node and the name of the wanted child node.<br>
      * 
@@ -274,6 +422,57 @@ public class XMLUtils {
          }
     }
     
+    /**
+     * Check whether the given node is the <code>container</code> node or one of its descendants.<br>
+     * 
+     * @param node node to be checked
+     * @param container the possible container node
+     * @return <code>true</code> if node is contained in container, <code>false</code> otherwise
+     */
+    public static boolean isContained(Node node, Node container){
+        
+        for (Node n = node; n != null; n = n.getParentNode()){
+            if (n == container){
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Gets all the nodes in the subtree starting from the given root node, in document order.<br>
+     * The subtrees of the excluded nodes are skipped.<br>
+     * 
+     * @param root node from which the subtree starts
+     * @param excludedNodes nodes whose subtrees must be skipped
+     * @return the list of nodes
+     */
+    public static List<Node> getSubtreeNodes(Node root, Set<Node> excludedNodes){
+        
+        List<Node> list = new ArrayList<Node>();
+        Node n = root;
+        
+        while (n != null){
+            
+            if (!excludedNodes.contains(n)){
+                list.add(n);
+                if (n.getFirstChild() != null){
+                    n = n.getFirstChild();
+                    continue;
+                }
+            }
+            
+            // Go to the next sibling, or to the next sibling of the closest ancestor that has one
+            while (n != root && n.getNextSibling() == null){
+                n = n.getParentNode();
+            }
+            n = (n == root) ? null : n.getNextSibling();
+        }
+        
+        return list;
+    }
+    
     /**
      * Creates a Node iterator from the given Document object, starting from the given node.<br>
      * @param doc document from which iterator will be created
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Command line generator of synthetic hAtom corpora (see <code>FeedGenerator</code>), used to reproduce the
+ * validation of large pages without real documents.<br>
+ * Each document of the corpus is generated with its own seed, so the errors are found in different places,
+ * and it's written as <code>feed-nnnnn.xhtml</code> in the output directory. Without output directory, a
+ * single document is written to the standard output.<br>
+ * <br>
+ * Options:<br>
+ * <li><code>-documents n</code>: number of documents, 1 by default
+ * <li><code>-entries n</code>: hentries of each document, 10 by default
+ * <li><code>-depth n</code>: nesting depth of the hentry children, 1 by default
+ * <li><code>-content n</code>: characters of each entry content, 32 by default
+ * <li><code>-layout page|single|multi</code>: layout of the feeds, page by default
+ * <li><code>-feeds n</code>: number of feeds of the multi layout, 2 by default
+ * <li><code>-error kind=rate</code>: rate of a kind of error, that can be missing-feed-key,
+ * duplicate-entry-key, bad-date or misplaced-keyword (can be repeated)
+ * <li><code>-seed n</code>: seed of the first document
+ * <li><code>-out dir</code>: output directory<br>
+ *
+ * @author Andrea Castello
+ * @version 1.0
+ */
+public class CorpusGenerator {
+
+    /**
+     * Generates the corpus described by the arguments.<br>
+     * @param args generator options
+     */
+    public static void main(String[] args) {
+
+        FeedGenerator generator = new FeedGenerator();
+        int documents = 1;
+        File outputDirectory = null;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of option " + args[i]);
+                }
+
+                String option = args[i];
+                String value = args[i + 1];
+
+                if (option.equals("-documents")) {
+                    documents = Integer.parseInt(value);
+                } else if (option.equals("-entries")) {
+                    generator.setEntries(Integer.parseInt(value));
+                } else if (option.equals("-depth")) {
+                    generator.setDepth(Integer.parseInt(value));
+                } else if (option.equals("-content")) {
+                    generator.setContentSize(Integer.parseInt(value));
+                } else if (option.equals("-layout")) {
+                    generator.setLayout(indexOf(FeedGenerator.LAYOUT_NAMES, value, "layout"));
+                } else if (option.equals("-feeds")) {
+                    generator.setFeeds(Integer.parseInt(value));
+                } else if (option.equals("-error")) {
+                    int separator = value.indexOf('=');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Error rate must be given as kind=rate: " + value);
+                    }
+                    generator.setErrorRate(indexOf(FeedGenerator.ERROR_NAMES, value.substring(0, separator), "error"),
+                            Double.parseDouble(value.substring(separator + 1)));
+                } else if (option.equals("-seed")) {
+                    generator.setSeed(Long.parseLong(value));
+                } else if (option.equals("-out")) {
+                    outputDirectory = new File(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+
+            if (outputDirectory == null && documents != 1) {
+                throw new IllegalArgumentException("An output directory is needed to generate more than one document");
+            }
+
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+
+        try {
+            if (outputDirectory == null) {
+                System.out.print(generator.generate());
+            } else {
+                generate(generator, documents, outputDirectory);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Writes the documents of the corpus in the given directory.<br>
+     * @throws IOException if a document cannot be written
+     */
+    public static void generate(FeedGenerator generator, int documents, File outputDirectory) throws IOException {
+
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Directory " + outputDirectory + " cannot be created");
+        }
+
+        long seed = generator.getSeed();
+
+        for (int i = 0; i < documents; i++) {
+
+            generator.setSeed(seed + i);
+
+            Writer writer = new OutputStreamWriter(new FileOutputStream(new File(outputDirectory,
+                    "feed-" + String.format("%05d", i) + ".xhtml")), "UTF-8");
+            try {
+                writer.write(generator.generate());
+            } finally {
+                writer.close();
+            }
+        }
+
+        generator.setSeed(seed);
+    }
+
+    /**
+     * Returns the index of the given name, which is the value of the corresponding constant.<br>
+     */
+    private static int indexOf(String[] names, String name, String what) {
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + what + " " + name);
+    }
+
+    /**
+     * Prints the command line syntax.<br>
+     */
+    private static void printUsage() {
+        System.err.println("Usage: java " + CorpusGenerator.class.getName()
+                + " [-documents n] [-entries n] [-depth n] [-content n] [-layout page|single|multi] [-feeds n]"
+                + " [-error kind=rate]... [-seed n] [-out dir]");
+    }
+}
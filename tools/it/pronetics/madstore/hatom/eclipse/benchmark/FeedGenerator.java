@@ -0,0 +1,277 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic hAtom XHTML documents, used by the benchmarks and by load tests (see
+ * <code>CorpusGenerator</code>).<br>
+ * The document has the given number of hentries, laid out as a page hfeed (the feed is the whole page), as a
+ * single hfeed or as several hfeeds sharing the hentries. Each hentry child is nested inside
+ * <code>depth</code> plain <code>div</code> elements, and the entry content has about
+ * <code>contentSize</code> characters of text.<br>
+ * <br>
+ * Errors are injected with a rate for each kind: the rate of <code>ERROR_MISSING_FEED_KEY</code> is the
+ * fraction of the feeds without feed-key, the rates of the other kinds are fractions of the hentries. With
+ * all the rates at 0 the document is valid. The generator is deterministic: the same parameters and seed
+ * always give the same document.<br>
+ *
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public class FeedGenerator {
+
+    // Layouts of the feeds in the page
+    public static final int LAYOUT_PAGE_FEED = 0;
+    public static final int LAYOUT_SINGLE_FEED = 1;
+    public static final int LAYOUT_MULTI_FEED = 2;
+
+    // Kinds of errors
+    public static final int ERROR_MISSING_FEED_KEY = 0;
+    public static final int ERROR_DUPLICATE_ENTRY_KEY = 1;
+    public static final int ERROR_BAD_DATE = 2;
+    public static final int ERROR_MISPLACED_KEYWORD = 3;
+
+    // Names of the layouts and of the errors, in constant order
+    public static final String[] LAYOUT_NAMES = { "page", "single", "multi" };
+    public static final String[] ERROR_NAMES = { "missing-feed-key", "duplicate-entry-key", "bad-date", "misplaced-keyword" };
+
+    // Default seed of the random generator that chooses where errors are injected
+    public static final long DEFAULT_SEED = 20090101L;
+
+    // Words of the entry contents
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+            "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua" };
+
+    // Number of hentries
+    private int entries = 10;
+
+    // Number of div elements around each hentry child
+    private int depth = 1;
+
+    // Approximate number of characters of each entry content
+    private int contentSize = 32;
+
+    // Layout of the feeds, and number of feeds of the multi feed layout
+    private int layout = LAYOUT_PAGE_FEED;
+    private int feeds = 2;
+
+    // Rate of each kind of error, from 0 to 1
+    private double[] errorRates = new double[ERROR_NAMES.length];
+
+    // Seed of the random generator
+    private long seed = DEFAULT_SEED;
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public void setEntries(int entries) {
+        this.entries = entries;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public int getContentSize() {
+        return contentSize;
+    }
+
+    public void setContentSize(int contentSize) {
+        this.contentSize = contentSize;
+    }
+
+    public int getLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the layout of the feeds.<br>
+     * @param layout one of the <code>LAYOUT_</code> constants
+     */
+    public void setLayout(int layout) {
+        if (layout < 0 || layout >= LAYOUT_NAMES.length) {
+            throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+        this.layout = layout;
+    }
+
+    public int getFeeds() {
+        return feeds;
+    }
+
+    /**
+     * Sets the number of feeds of the multi feed layout.<br>
+     * @param feeds number of feeds, at least 2
+     */
+    public void setFeeds(int feeds) {
+        if (feeds < 2) {
+            throw new IllegalArgumentException("A multi feed page needs at least 2 feeds");
+        }
+        this.feeds = feeds;
+    }
+
+    /**
+     * Returns the rate of the given kind of error.<br>
+     * @param error one of the <code>ERROR_</code> constants
+     */
+    public double getErrorRate(int error) {
+        return errorRates[error];
+    }
+
+    /**
+     * Sets the rate of the given kind of error.<br>
+     * @param error one of the <code>ERROR_</code> constants
+     * @param rate fraction of the feeds or of the hentries with the error, from 0 to 1
+     */
+    public void setErrorRate(int error, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1: " + rate);
+        }
+        errorRates[error] = rate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates the document.<br>
+     * @return the XHTML text
+     */
+    public String generate() {
+
+        Random random = new Random(seed);
+        StringBuffer buf = new StringBuffer(entries * (400 + depth * 22 + contentSize) + 256);
+
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
+        buf.append("<head><title>Synthetic feed</title></head>\n");
+        buf.append("<body>\n");
+
+        switch (layout) {
+            case LAYOUT_PAGE_FEED:
+                appendFeed(buf, random, 1, 0, entries);
+                break;
+
+            case LAYOUT_SINGLE_FEED:
+                buf.append("<div class=\"header\"><h1>Synthetic feed</h1></div>\n");
+                buf.append("<div class=\"hfeed\">\n");
+                appendFeed(buf, random, 1, 0, entries);
+                buf.append("</div>\n");
+                break;
+
+            case LAYOUT_MULTI_FEED:
+                for (int i = 0; i < feeds; i++) {
+                    buf.append("<div class=\"hfeed\">\n");
+                    appendFeed(buf, random, i + 1, (int) ((long) entries * i / feeds), (int) ((long) entries * (i + 1) / feeds));
+                    buf.append("</div>\n");
+                }
+                break;
+        }
+
+        buf.append("</body>\n");
+        buf.append("</html>\n");
+
+        return buf.toString();
+    }
+
+    /**
+     * Appends the feed-key and the hentries of a feed.<br>
+     * @param feed number of the feed, used in its key
+     * @param first number of the first hentry of the feed
+     * @param end number of the hentry after the last one
+     */
+    private void appendFeed(StringBuffer buf, Random random, int feed, int first, int end) {
+
+        if (!hasError(random, ERROR_MISSING_FEED_KEY)) {
+            buf.append("<span class=\"feed-key\" title=\"feed-" + feed + "\">Feed " + feed + "</span>\n");
+        }
+
+        for (int i = first; i < end; i++) {
+
+            // Keys are duplicated within the feed, so the first hentry cannot have the error
+            boolean duplicateKey = hasError(random, ERROR_DUPLICATE_ENTRY_KEY) && i > first;
+            boolean badDate = hasError(random, ERROR_BAD_DATE);
+            boolean misplacedKeyword = hasError(random, ERROR_MISPLACED_KEYWORD);
+
+            String key = "entry-" + (duplicateKey ? i - 1 : i);
+            String updated = badDate ? "01/01/2009" : "2009-01-01T10:30:00+01:00";
+
+            buf.append("<div class=\"hentry\">\n");
+            appendChild(buf, "<span class=\"entry-key\" title=\"" + key + "\">" + i + "</span>");
+            appendChild(buf, "<h2 class=\"entry-title\">Entry " + i + "</h2>");
+            appendChild(buf, "<abbr class=\"updated\" title=\"" + updated + "\">January 1, 2009</abbr>");
+            appendChild(buf, "<span class=\"vcard author\"><span class=\"fn\">Author</span></span>");
+            appendChild(buf, "<div class=\"entry-content\"><p>" + getContent(random) + "</p></div>");
+            buf.append("</div>\n");
+
+            // An hentry child outside of any hentry
+            if (misplacedKeyword) {
+                appendChild(buf, "<span class=\"entry-summary\">Summary of entry " + i + "</span>");
+            }
+        }
+    }
+
+    /**
+     * Decides whether an error of the given kind must be injected.<br>
+     */
+    private boolean hasError(Random random, int error) {
+        // A number is drawn even when the rate is 0, so the other errors do not move when a rate changes
+        return random.nextDouble() < errorRates[error];
+    }
+
+    /**
+     * Returns an entry content of about <code>contentSize</code> characters.<br>
+     */
+    private String getContent(Random random) {
+
+        StringBuffer content = new StringBuffer(contentSize + 16);
+
+        while (content.length() < contentSize) {
+            if (content.length() > 0) {
+                content.append(' ');
+            }
+            content.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return content.toString();
+    }
+
+    /**
+     * Appends a hentry child, nested inside <code>depth</code> div elements.<br>
+     */
+    private void appendChild(StringBuffer buf, String child) {
+
+        for (int i = 0; i < depth; i++) {
+            buf.append("<div>");
+        }
+        buf.append(child);
+        for (int i = 0; i < depth; i++) {
+            buf.append("</div>");
+        }
+        buf.append('\n');
+    }
+}
@@ -0,0 +1,524 @@
+/**
+ * Copyright 2008 - 2009 Pro-Netics S.P.A.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.pronetics.madstore.hatom.eclipse.benchmark;
+
+import it.pronetics.madstore.hatom.eclipse.validator.Analyzer;
+import it.pronetics.madstore.hatom.eclipse.validator.DateTimeAnalyzer;
+import it.pronetics.madstore.hatom.eclipse.validator.HentryAnalyzer;
+import it.pronetics.madstore.hatom.eclipse.validator.HentryChildAnalyzer;
+import it.pronetics.madstore.hatom.eclipse.validator.ReportBuffer;
+import it.pronetics.madstore.hatom.eclipse.validator.ValidatorEngine;
+import it.pronetics.madstore.hatom.eclipse.validator.XMLUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Benchmarks of the validator hot paths, run on synthetic feeds (see <code>FeedGenerator</code>) of
+ * different sizes, nesting depths and error rates.<br>
+ * Each benchmark is run for some warmup iterations, whose results are discarded, and then for the measured
+ * iterations: every iteration repeats the operation for at least the iteration time. For each combination
+ * the average time per operation (with its standard deviation) is printed, together with the bytes
+ * allocated per operation and the allocation rate, when the JVM can measure them. Allocations are counted
+ * on the benchmark thread only, so the engine runs its analyzers sequentially.<br>
+ * <br>
+ * Options (lists are comma separated):<br>
+ * <li><code>-entries list</code>: hentry counts, 10,1000,10000,100000 by default
+ * <li><code>-depth list</code>: nesting depths of the hentry children, 1,8 by default
+ * <li><code>-errors list</code>: fractions of hentries with an invalid updated date, 0,0.1 by default
+ * <li><code>-warmup n</code>: warmup iterations, 3 by default
+ * <li><code>-iterations n</code>: measured iterations, 5 by default
+ * <li><code>-time ms</code>: minimum time of an iteration, 1000 by default
+ * <li><code>-bench name</code>: runs only the benchmarks whose name contains <code>name</code><br>
+ *
+ * @author Andrea Castello
+ * @version 1.1
+ */
+public class ValidatorBenchmark {
+
+    // Keywords looked for by the attribute matching benchmark
+    private static final String[] KEYWORDS;
+
+    static {
+        KEYWORDS = new String[HentryChildAnalyzer.HENTRY_CHILDREN.length + 2];
+        KEYWORDS[0] = Analyzer.KEYWORD_HFEED;
+        KEYWORDS[1] = Analyzer.KEYWORD_HENTRY;
+        System.arraycopy(HentryChildAnalyzer.HENTRY_CHILDREN, 0, KEYWORDS, 2, HentryChildAnalyzer.HENTRY_CHILDREN.length);
+    }
+
+    // Benchmark parameters
+    private int[] entryCounts = { 10, 1000, 10000, 100000 };
+    private int[] depths = { 1, 8 };
+    private double[] errorRates = { 0, 0.1 };
+
+    // Iteration settings
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationTime = 1000;
+
+    // Part of the name of the benchmarks to be run, null to run all of them
+    private String filter;
+
+    // Results of the operations, read so that the measured code cannot be dropped by the compiler
+    private static volatile long sink;
+
+    // Measures the bytes allocated by a thread, null if the JVM does not support it
+    private static final Method ALLOCATED_BYTES = getAllocatedBytesMethod();
+
+    /**
+     * Runs the benchmarks.<br>
+     * @param args benchmark options
+     * @throws IOException if a synthetic document cannot be parsed
+     */
+    public static void main(String[] args) throws IOException {
+
+        ValidatorBenchmark benchmark = new ValidatorBenchmark();
+
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java " + ValidatorBenchmark.class.getName()
+                    + " [-entries list] [-depth list] [-errors list] [-warmup n] [-iterations n] [-time ms] [-bench name]");
+            System.exit(2);
+        }
+
+        benchmark.run();
+    }
+
+    /**
+     * Reads the benchmark options.<br>
+     * @throws IllegalArgumentException if the options are not valid
+     */
+    private void parseArguments(String[] args) {
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of option " + args[i]);
+                }
+
+                String option = args[i];
+                String value = args[i + 1];
+
+                if (option.equals("-entries")) {
+                    entryCounts = parseInts(value);
+                } else if (option.equals("-depth")) {
+                    depths = parseInts(value);
+                } else if (option.equals("-errors")) {
+                    String[] values = value.split(",");
+                    errorRates = new double[values.length];
+                    for (int j = 0; j < values.length; j++) {
+                        errorRates[j] = Double.parseDouble(values[j].trim());
+                    }
+                } else if (option.equals("-warmup")) {
+                    warmupIterations = Integer.parseInt(value);
+                } else if (option.equals("-iterations")) {
+                    iterations = Integer.parseInt(value);
+                } else if (option.equals("-time")) {
+                    iterationTime = Long.parseLong(value);
+                } else if (option.equals("-bench")) {
+                    filter = value;
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+        }
+
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("At least one measured iteration is needed");
+        }
+    }
+
+    /**
+     * Parses a comma separated list of integers.<br>
+     */
+    private static int[] parseInts(String value) {
+
+        String[] values = value.split(",");
+        int[] ints = new int[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return ints;
+    }
+
+    /**
+     * Runs all the benchmarks on all the parameter combinations.<br>
+     * @throws IOException if a synthetic document cannot be parsed
+     */
+    public void run() throws IOException {
+
+        Operation[] operations = { new EngineValidation(), new AttributeMatching(), new HentryAnalysis(),
+                new DateTimeAnalysis() };
+
+        System.out.println(String.format("%-20s %8s %6s %6s %14s %12s %14s %10s", "Benchmark", "entries", "depth",
+                "errors", "time/op (us)", "+- (us)", "alloc/op (B)", "MB/s"));
+
+        for (int entryCount : entryCounts) {
+            for (int depth : depths) {
+                for (double errorRate : errorRates) {
+
+                    FeedGenerator generator = new FeedGenerator();
+                    generator.setEntries(entryCount);
+                    generator.setDepth(depth);
+                    generator.setErrorRate(FeedGenerator.ERROR_BAD_DATE, errorRate);
+                    String text = generator.generate();
+
+                    for (Operation operation : operations) {
+                        if (filter == null || operation.getName().indexOf(filter) >= 0) {
+                            operation.setUp(text);
+                            Result result = measure(operation);
+                            operation.tearDown();
+                            System.out.println(String.format("%-20s %8d %6d %6.2f %14.1f %12.1f %14s %10s",
+                                    operation.getName(), entryCount, depth, errorRate, result.getAverage() / 1e3,
+                                    result.getDeviation() / 1e3, result.getAllocatedBytes(), result.getAllocationRate()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the warmup and the measured iterations of an operation.<br>
+     * @throws IOException if the operation fails
+     */
+    private Result measure(Operation operation) throws IOException {
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(operation, new Result());
+        }
+
+        Result result = new Result();
+
+        for (int i = 0; i < iterations; i++) {
+            iterate(operation, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Repeats the operation for at least the iteration time, adding the iteration to the result.<br>
+     * @throws IOException if the operation fails
+     */
+    private void iterate(Operation operation, Result result) throws IOException {
+
+        long deadline = System.nanoTime() + iterationTime * 1000000L;
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        long count = 0;
+        long value = 0;
+        long end;
+
+        do {
+            value += operation.run();
+            count++;
+            end = System.nanoTime();
+        } while (end < deadline);
+
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        sink = value;
+
+        result.add(count, end - start, (allocatedBefore >= 0) ? allocated : -1);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the JVM cannot measure them.<br>
+     */
+    private static long getAllocatedBytes() {
+
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+
+        try {
+            return ((Long) ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId())).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Looks up <code>getThreadAllocatedBytes</code> of the HotSpot thread bean, which is not part of the
+     * standard management API.<br>
+     */
+    private static Method getAllocatedBytesMethod() {
+
+        try {
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (beanClass.isInstance(ManagementFactory.getThreadMXBean())) {
+                return beanClass.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            // Allocations will not be measured
+        }
+        return null;
+    }
+
+    /**
+     * Statistics of the measured iterations of a benchmark.<br>
+     */
+    private static class Result {
+
+        // Sum and sum of squares of the iteration times per operation, in nanoseconds
+        private double sum;
+        private double squareSum;
+        private int iterationCount;
+
+        // Totals of all the iterations, allocated bytes is -1 if unknown
+        private long operationCount;
+        private long elapsedTime;
+        private long allocatedBytes;
+
+        public void add(long count, long time, long allocated) {
+
+            double timePerOperation = (double) time / count;
+
+            sum += timePerOperation;
+            squareSum += timePerOperation * timePerOperation;
+            iterationCount++;
+
+            operationCount += count;
+            elapsedTime += time;
+            allocatedBytes = (allocated < 0 || allocatedBytes < 0) ? -1 : allocatedBytes + allocated;
+        }
+
+        public double getAverage() {
+            return sum / iterationCount;
+        }
+
+        public double getDeviation() {
+            double average = getAverage();
+            return Math.sqrt(Math.max(squareSum / iterationCount - average * average, 0));
+        }
+
+        public String getAllocatedBytes() {
+            return (allocatedBytes < 0) ? "n/a" : String.valueOf(allocatedBytes / operationCount);
+        }
+
+        public String getAllocationRate() {
+            return (allocatedBytes < 0) ? "n/a" : String.format("%.1f", allocatedBytes / (elapsedTime / 1e9) / (1024 * 1024));
+        }
+    }
+
+    /**
+     * Measured operation, run on a synthetic document.<br>
+     */
+    private abstract static class Operation {
+
+        private final String name;
+
+        protected Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Prepares the operation for the given document.<br>
+         */
+        public abstract void setUp(String text) throws IOException;
+
+        /**
+         * Runs the operation once.<br>
+         * @return a value depending on the result, so that the operation cannot be optimized away
+         */
+        public abstract int run() throws IOException;
+
+        /**
+         * Releases the document, so that it does not take memory while the next benchmarks run.<br>
+         */
+        public abstract void tearDown();
+    }
+
+    /**
+     * Parses the given text into a DOM document.<br>
+     */
+    private static Document parse(String text) throws IOException {
+        return XMLUtils.getDocument(new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    /**
+     * Whole validation of the document text, as done by the editor.<br>
+     */
+    private static class EngineValidation extends Operation {
+
+        private String text;
+
+        public EngineValidation() {
+            super("engine.validate");
+        }
+
+        public void setUp(String text) {
+            this.text = text;
+        }
+
+        public int run() throws IOException {
+            ValidatorEngine engine = new ValidatorEngine();
+            engine.validate((CharSequence) text);
+            return engine.getReports().size();
+        }
+
+        public void tearDown() {
+            text = null;
+        }
+    }
+
+    /**
+     * Matching of all the class and rel attribute values of the document against the hAtom keywords.<br>
+     */
+    private static class AttributeMatching extends Operation {
+
+        private String[] values;
+
+        public AttributeMatching() {
+            super("attributeValueMatches");
+        }
+
+        public void setUp(String text) throws IOException {
+
+            List<String> list = new ArrayList<String>();
+            NodeList elements = parse(text).getElementsByTagName("*");
+
+            for (int i = 0; i < elements.getLength(); i++) {
+                Element element = (Element) elements.item(i);
+                if (element.hasAttribute(ValidatorEngine.ATTR_CLASS)) {
+                    list.add(element.getAttribute(ValidatorEngine.ATTR_CLASS));
+                }
+                if (element.hasAttribute(ValidatorEngine.ATTR_REL)) {
+                    list.add(element.getAttribute(ValidatorEngine.ATTR_REL));
+                }
+            }
+
+            values = list.toArray(new String[list.size()]);
+        }
+
+        public int run() {
+
+            int matches = 0;
+
+            for (String value : values) {
+                for (String keyword : KEYWORDS) {
+                    if (XMLUtils.attributeValueMatches(value, keyword)) {
+                        matches++;
+                    }
+                }
+            }
+            return matches;
+        }
+
+        public void tearDown() {
+            values = null;
+        }
+    }
+
+    /**
+     * Analysis of the hentries of the page feed, on an already parsed and indexed document.<br>
+     */
+    private static class HentryAnalysis extends Operation {
+
+        private Document doc;
+
+        public HentryAnalysis() {
+            super("HentryAnalyzer");
+        }
+
+        public void setUp(String text) throws IOException {
+            doc = parse(text);
+        }
+
+        public int run() throws IOException {
+            ReportBuffer reports = new ReportBuffer();
+            HentryAnalyzer analyzer = new HentryAnalyzer(doc.getDocumentElement());
+            analyzer.setXhtmlDoc(doc);
+            analyzer.setReportSink(reports);
+            analyzer.analyze();
+            return reports.getReports().size();
+        }
+
+        public void tearDown() {
+            doc = null;
+        }
+    }
+
+    /**
+     * Analysis of all the updated nodes of the document, reusing the same analyzer like HentryAnalyzer.<br>
+     */
+    private static class DateTimeAnalysis extends Operation {
+
+        private List<Node> nodes;
+        private DateTimeAnalyzer analyzer;
+        private ReportBuffer reports;
+
+        public DateTimeAnalysis() {
+            super("DateTimeAnalyzer");
+        }
+
+        public void setUp(String text) throws IOException {
+
+            Document doc = parse(text);
+            NodeList elements = doc.getElementsByTagName("*");
+
+            nodes = new ArrayList<Node>();
+            for (int i = 0; i < elements.getLength(); i++) {
+                if (XMLUtils.nodeAttributeMatches(elements.item(i), ValidatorEngine.ATTR_CLASS, Analyzer.KEYWORD_UPDATED)) {
+                    nodes.add(elements.item(i));
+                }
+            }
+
+            reports = new ReportBuffer();
+            analyzer = new DateTimeAnalyzer();
+            analyzer.setXhtmlDoc(doc);
+            analyzer.setReportSink(reports);
+            analyzer.setAttributeName(ValidatorEngine.ATTR_CLASS);
+            analyzer.setAttributeValue(Analyzer.KEYWORD_UPDATED);
+        }
+
+        public int run() {
+
+            reports.clear();
+
+            for (Node node : nodes) {
+                analyzer.setNode(node);
+                analyzer.analyzeNode();
+            }
+            return reports.getReports().size();
+        }
+
+        public void tearDown() {
+            nodes = null;
+            analyzer = null;
+            reports = null;
+        }
+    }
+}